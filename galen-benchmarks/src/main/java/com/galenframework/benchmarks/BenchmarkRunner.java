@@ -0,0 +1,93 @@
+/*******************************************************************************
+* Copyright 2016 Ivan Shubin http://galenframework.com
+* 
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* 
+*   http://www.apache.org/licenses/LICENSE-2.0
+* 
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+******************************************************************************/
+package com.galenframework.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.awt.*;
+import java.util.*;
+import java.util.List;
+
+/**
+ * Runs the benchmarks with the gc profiler and prints a scaling curve of each benchmark against image size.
+ * Accepts the same arguments as the JMH runner, e.g. a regexp for benchmarks and -p size=1920x1080
+ */
+public class BenchmarkRunner {
+
+    private static final String SIZE_PARAM = "size";
+    private static final String ALLOCATION_RATE = "gc.alloc.rate.norm";
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build();
+
+        Collection<RunResult> results = new Runner(options).run();
+        printScalingCurve(results);
+    }
+
+    private static void printScalingCurve(Collection<RunResult> results) {
+        Map<String, List<RunResult>> benchmarks = new TreeMap<>();
+        for (RunResult result : results) {
+            if (result.getParams().getParam(SIZE_PARAM) != null) {
+                benchmarks.computeIfAbsent(benchmarkName(result), name -> new ArrayList<>()).add(result);
+            }
+        }
+
+        System.out.println();
+        System.out.println("Scaling against image size");
+        System.out.println(String.format("%-70s %12s %14s %14s %16s", "Benchmark", "Megapixels", "ops/s", "Mpx/s", "bytes/op"));
+        for (Map.Entry<String, List<RunResult>> benchmark : benchmarks.entrySet()) {
+            benchmark.getValue().sort(Comparator.comparingDouble(BenchmarkRunner::megapixels));
+            for (RunResult result : benchmark.getValue()) {
+                double megapixels = megapixels(result);
+                double score = result.getPrimaryResult().getScore();
+                Result allocation = result.getSecondaryResults().get(ALLOCATION_RATE);
+
+                System.out.println(String.format("%-70s %12.2f %14.2f %14.2f %16s",
+                        benchmark.getKey(), megapixels, score, score * megapixels,
+                        allocation != null ? String.format("%.0f", allocation.getScore()) : "-"));
+            }
+        }
+    }
+
+    /**
+     * @return name of the benchmark together with all its params except the size
+     */
+    private static String benchmarkName(RunResult result) {
+        StringBuilder name = new StringBuilder(result.getParams().getBenchmark().replace("com.galenframework.benchmarks.", ""));
+        for (String param : result.getParams().getParamsKeys()) {
+            if (!SIZE_PARAM.equals(param)) {
+                name.append(' ').append(param).append('=').append(result.getParams().getParam(param));
+            }
+        }
+        return name.toString();
+    }
+
+    private static double megapixels(RunResult result) {
+        Dimension size = Screenshots.parseSize(result.getParams().getParam(SIZE_PARAM));
+        return size.width * (double) size.height / 1000000;
+    }
+}
@@ -0,0 +1,90 @@
+/*******************************************************************************
+* Copyright 2016 Ivan Shubin http://galenframework.com
+* 
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* 
+*   http://www.apache.org/licenses/LICENSE-2.0
+* 
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+******************************************************************************/
+package com.galenframework.benchmarks;
+
+import com.galenframework.rainbow4j.ComparisonOptions;
+import com.galenframework.rainbow4j.ImageCompareResult;
+import com.galenframework.rainbow4j.Rainbow4J;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares a screenshot with a slightly changed copy of itself the way image specs do it
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CompareBenchmark {
+
+    @Param({"800x600", "1366x768", "1920x1080", "1920x4000"})
+    public String size;
+
+    @Param({"plain", "stretch", "offset", "ignoreRegions"})
+    public String mode;
+
+    private BufferedImage imageA;
+    private BufferedImage imageB;
+    private ComparisonOptions options;
+
+    @Setup
+    public void setup() {
+        imageA = Screenshots.generate(size, 1);
+        imageB = changedCopy(imageA, mode.equals("stretch") ? 0.9 : 1.0);
+
+        options = new ComparisonOptions();
+        options.setTolerance(5);
+        if (mode.equals("stretch")) {
+            options.setStretchToFit(true);
+        } else if (mode.equals("offset")) {
+            options.setAnalyzeOffset(2);
+        } else if (mode.equals("ignoreRegions")) {
+            options.setIgnoreRegions(Arrays.asList(
+                new Rectangle(0, 0, imageA.getWidth(), 80),
+                new Rectangle(imageA.getWidth() / 3, imageA.getHeight() / 3, 300, 200),
+                new Rectangle(imageA.getWidth() / 3 + 150, imageA.getHeight() / 3 + 100, 300, 200)
+            ));
+        }
+    }
+
+    @Benchmark
+    public ImageCompareResult compare() throws IOException {
+        return Rainbow4J.compare(imageA, imageB, options);
+    }
+
+    /**
+     * Draws a few changes on a copy of the image, shifted by one pixel so that the offset analysis has something to find
+     */
+    private static BufferedImage changedCopy(BufferedImage image, double scale) {
+        int width = (int) (image.getWidth() * scale);
+        int height = (int) (image.getHeight() * scale);
+        BufferedImage copy = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = copy.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(image, 1, 1, width, height, null);
+        g.setColor(Color.red);
+        g.fillRect(width / 2, height / 2, width / 20, height / 20);
+        g.dispose();
+        return copy;
+    }
+}
@@ -0,0 +1,85 @@
+/*******************************************************************************
+* Copyright 2016 Ivan Shubin http://galenframework.com
+* 
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* 
+*   http://www.apache.org/licenses/LICENSE-2.0
+* 
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+******************************************************************************/
+package com.galenframework.benchmarks;
+
+import com.galenframework.rainbow4j.ComparisonOptions;
+import com.galenframework.rainbow4j.ImageCompareResult;
+import com.galenframework.rainbow4j.ImageHandler;
+import com.galenframework.rainbow4j.Rainbow4J;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the direct compare kernel with the generic scalar one on images which are already in RGBA layout,
+ * so that only the per-pixel loops are measured
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CompareKernelBenchmark {
+
+    @Param({"800x600", "1920x1080", "1920x4000"})
+    public String size;
+
+    @Param({"direct", "scalar"})
+    public String kernel;
+
+    private BufferedImage imageA;
+    private BufferedImage imageB;
+    private ComparisonOptions mapOptions;
+    private ComparisonOptions countOptions;
+
+    @Setup
+    public void setup() {
+        // every set of params runs in its own fork, so the kernel is chosen before it is first loaded
+        System.setProperty("rainbow4j.compare.scalarKernel", String.valueOf(kernel.equals("scalar")));
+
+        imageA = ImageHandler.copyToRgbaImage(Screenshots.generate(size, 1));
+        BufferedImage changed = Screenshots.generate(size, 1);
+        int changedWidth = changed.getWidth() / 20;
+        int changedHeight = changed.getHeight() / 20;
+        Graphics2D g = changed.createGraphics();
+        g.setColor(Color.red);
+        g.fillRect(changed.getWidth() / 2, changed.getHeight() / 2, changedWidth, changedHeight);
+        g.dispose();
+        imageB = ImageHandler.copyToRgbaImage(changed);
+
+        mapOptions = new ComparisonOptions();
+        mapOptions.setTolerance(5);
+
+        countOptions = new ComparisonOptions();
+        countOptions.setTolerance(5);
+        // just enough for the changed rectangle, so that the images pass but all pixels have to be compared
+        countOptions.setMismatchBudget((long) changedWidth * changedHeight);
+    }
+
+    @Benchmark
+    public ImageCompareResult compareWithMap() throws IOException {
+        return Rainbow4J.compare(imageA, imageB, mapOptions);
+    }
+
+    @Benchmark
+    public ImageCompareResult countMismatches() throws IOException {
+        return Rainbow4J.compare(imageA, imageB, countOptions);
+    }
+}
@@ -0,0 +1,87 @@
+/*******************************************************************************
+* Copyright 2016 Ivan Shubin http://galenframework.com
+* 
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* 
+*   http://www.apache.org/licenses/LICENSE-2.0
+* 
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+******************************************************************************/
+package com.galenframework.benchmarks;
+
+import com.galenframework.rainbow4j.ImageHandler;
+import com.galenframework.rainbow4j.colorscheme.SimpleColorClassifier;
+import com.galenframework.rainbow4j.filters.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applies a single image filter to a whole screenshot.
+ * Filters modify pixels in place, so every invocation starts from a fresh copy of the screenshot
+ * which is made outside of the measured code.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FilterBenchmark {
+
+    @Param({"800x600", "1366x768", "1920x1080", "1920x4000"})
+    public String size;
+
+    @Param({"blur", "denoise", "saturation", "contrast", "quantinize", "mask", "replaceColors"})
+    public String filterName;
+
+    private BufferedImage image;
+    private ImageFilter filter;
+    private ImageHandler handler;
+
+    @Setup
+    public void setup() {
+        image = Screenshots.generate(size, 1);
+        filter = createFilter(filterName, image);
+    }
+
+    @Setup(Level.Invocation)
+    public void copyImage() {
+        handler = new ImageHandler(image);
+    }
+
+    @TearDown(Level.Invocation)
+    public void releaseImage() {
+        handler.release();
+    }
+
+    @Benchmark
+    public ImageHandler applyFilter() {
+        handler.applyFilter(filter);
+        return handler;
+    }
+
+    static ImageFilter createFilter(String name, BufferedImage image) {
+        switch (name) {
+            case "blur": return new BlurFilter(5);
+            case "denoise": return new DenoiseFilter(5);
+            case "saturation": return new SaturationFilter(50);
+            case "contrast": return new ContrastFilter(50);
+            case "quantinize": return new QuantinizeFilter(16);
+            case "mask": return new MaskFilter(new ImageHandler(Screenshots.generate(image.getWidth(), image.getHeight(), 2)));
+            case "replaceColors": return new ReplaceColorsFilter(Collections.singletonList(
+                new ReplaceColorsDefinition(Color.black, Collections.singletonList(new SimpleColorClassifier("white", Color.white)))
+            ));
+            default: throw new IllegalArgumentException("Unknown filter: " + name);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*******************************************************************************
+* Copyright 2016 Ivan Shubin http://galenframework.com
+* 
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* 
+*   http://www.apache.org/licenses/LICENSE-2.0
+* 
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+******************************************************************************/
+package com.galenframework.benchmarks;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+/**
+ * Generates synthetic page screenshots which look roughly like real ones: a header, a navigation column,
+ * blocks of text, buttons and photos. Same size and seed always produce the same image.
+ */
+public final class Screenshots {
+
+    private Screenshots() {
+    }
+
+    /**
+     * @param size size in format WIDTHxHEIGHT, e.g. 1366x768
+     */
+    public static Dimension parseSize(String size) {
+        String[] parts = size.split("x");
+        return new Dimension(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]));
+    }
+
+    public static BufferedImage generate(String size, long seed) {
+        Dimension dimension = parseSize(size);
+        return generate(dimension.width, dimension.height, seed);
+    }
+
+    public static BufferedImage generate(int width, int height, long seed) {
+        Random random = new Random(seed);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+
+        g.setColor(Color.white);
+        g.fillRect(0, 0, width, height);
+
+        int headerHeight = Math.min(80, height / 8);
+        g.setPaint(new GradientPaint(0, 0, new Color(30, 60, 120), width, headerHeight, new Color(60, 110, 190)));
+        g.fillRect(0, 0, width, headerHeight);
+        g.setColor(Color.white);
+        g.setFont(new Font(Font.SANS_SERIF, Font.BOLD, 28));
+        g.drawString("Galen Benchmark", 20, headerHeight / 2 + 10);
+
+        int menuWidth = width / 6;
+        g.setColor(new Color(240, 240, 245));
+        g.fillRect(0, headerHeight, menuWidth, height - headerHeight);
+        g.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 14));
+        g.setColor(new Color(50, 50, 60));
+        for (int y = headerHeight + 30; y < height; y += 28) {
+            g.drawString("Menu item " + random.nextInt(1000), 15, y);
+        }
+
+        int contentX = menuWidth + 20;
+        int contentWidth = width - contentX - 20;
+        int y = headerHeight + 20;
+        while (y < height) {
+            int block = random.nextInt(3);
+            if (block == 0) {
+                y = drawText(g, random, contentX, y, contentWidth, height);
+            } else if (block == 1) {
+                y = drawPhoto(g, random, contentX, y, contentWidth, height);
+            } else {
+                y = drawButtons(g, random, contentX, y, contentWidth);
+            }
+            y += 20;
+        }
+
+        g.dispose();
+        return image;
+    }
+
+    private static int drawText(Graphics2D g, Random random, int x, int y, int width, int height) {
+        g.setColor(new Color(20, 20, 20));
+        g.setFont(new Font(Font.SERIF, Font.PLAIN, 16));
+        int lines = 3 + random.nextInt(8);
+        for (int i = 0; i < lines && y < height; i++) {
+            y += 22;
+            StringBuilder line = new StringBuilder();
+            while (g.getFontMetrics().stringWidth(line.toString()) < width - 80) {
+                line.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+            }
+            g.drawString(line.toString(), x, y);
+        }
+        return y;
+    }
+
+    private static int drawPhoto(Graphics2D g, Random random, int x, int y, int width, int height) {
+        int photoWidth = Math.min(width, 200 + random.nextInt(400));
+        int photoHeight = Math.min(height - y, 120 + random.nextInt(200));
+        if (photoHeight <= 0) {
+            return y;
+        }
+        g.setPaint(new GradientPaint(x, y, randomColor(random), x + photoWidth, y + photoHeight, randomColor(random)));
+        g.fillRect(x, y, photoWidth, photoHeight);
+        for (int i = 0; i < 30; i++) {
+            g.setColor(randomColor(random));
+            int size = 5 + random.nextInt(40);
+            g.fillOval(x + random.nextInt(photoWidth), y + random.nextInt(photoHeight), size, size);
+        }
+        return y + photoHeight;
+    }
+
+    private static int drawButtons(Graphics2D g, Random random, int x, int y, int width) {
+        g.setFont(new Font(Font.SANS_SERIF, Font.BOLD, 14));
+        int buttonX = x;
+        for (int i = 0; i < 4 && buttonX + 120 < x + width; i++) {
+            g.setColor(new Color(0, 120 + random.nextInt(60), 200));
+            g.fillRoundRect(buttonX, y, 120, 36, 10, 10);
+            g.setColor(Color.white);
+            g.drawString("Button " + i, buttonX + 25, y + 23);
+            buttonX += 140;
+        }
+        return y + 36;
+    }
+
+    private static Color randomColor(Random random) {
+        return new Color(random.nextInt(256), random.nextInt(256), random.nextInt(256));
+    }
+
+    private static final String[] WORDS = {
+        "lorem", "ipsum", "dolor", "sit", "amet", "layout", "spec", "image", "galen", "browser", "page", "visual"
+    };
+}
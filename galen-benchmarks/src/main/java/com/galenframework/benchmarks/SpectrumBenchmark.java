@@ -0,0 +1,73 @@
+/*******************************************************************************
+* Copyright 2016 Ivan Shubin http://galenframework.com
+* 
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* 
+*   http://www.apache.org/licenses/LICENSE-2.0
+* 
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+******************************************************************************/
+package com.galenframework.benchmarks;
+
+import com.galenframework.rainbow4j.Rainbow4J;
+import com.galenframework.rainbow4j.Spectrum;
+import com.galenframework.rainbow4j.colorscheme.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Arrays.asList;
+
+/**
+ * Reads color spectrum of a screenshot the way color scheme specs do it
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SpectrumBenchmark {
+
+    @Param({"800x600", "1366x768", "1920x1080", "1920x4000"})
+    public String size;
+
+    private BufferedImage image;
+    private List<ColorClassifier> colorClassifiers;
+
+    @Setup
+    public void setup() {
+        image = Screenshots.generate(size, 1);
+        colorClassifiers = asList(
+            new SimpleColorClassifier("white", Color.white),
+            new SimpleColorClassifier("black", Color.black),
+            new SimpleColorClassifier("menu", new Color(240, 240, 245)),
+            new GradientColorClassifier("header", asList(new Color(30, 60, 120), new Color(60, 110, 190)))
+        );
+    }
+
+    @Benchmark
+    public Spectrum readSpectrum() throws IOException {
+        return Rainbow4J.readSpectrum(image);
+    }
+
+    @Benchmark
+    public Spectrum readSpectrum_lowPrecision() throws IOException {
+        return Rainbow4J.readSpectrum(image, 64);
+    }
+
+    @Benchmark
+    public CustomSpectrum readCustomSpectrum() {
+        return Rainbow4J.readCustomSpectrum(image, colorClassifiers);
+    }
+}
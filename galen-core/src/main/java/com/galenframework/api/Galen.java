@@ -33,6 +33,7 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.Callable;
 
 public class Galen {
 
@@ -97,7 +98,8 @@ public class Galen {
         layoutReport.setIncludedTags(sectionFilter.getIncludedTags());
         layoutReport.setExcludedTags(sectionFilter.getExcludedTags());
         try {
-            File screenshot = page.getScreenshotFile();
+            // the screenshot is taken now but its file is only written once the report is saved
+            Callable<File> screenshot = page.getScreenshotFileWriter();
             if (screenshot != null) {
                 layoutReport.setScreenshot(layoutReport.registerFile("screenshot.png", screenshot));
             }
@@ -108,6 +110,8 @@ public class Galen {
         }
         listener.add(new LayoutReportListener(layoutReport));
 
+        new PageObjectsPrefetch(pageSpec).prefetch(page);
+
         SectionValidation sectionValidation = new SectionValidation(pageSpec.getSections(), new PageValidation(browser, page, pageSpec, listener, sectionFilter), listener);
 
         List<ValidationResult> results = sectionValidation.check();
@@ -23,6 +23,7 @@ import java.util.regex.Pattern;
 
 import com.galenframework.browser.Browser;
 import com.galenframework.browser.SeleniumBrowser;
+import com.galenframework.page.Page;
 import com.galenframework.page.PageElement;
 import com.galenframework.page.Rect;
 import com.galenframework.rainbow4j.Rainbow4J;
@@ -82,7 +83,9 @@ public class GalenPageDump {
         }
 
         Set<String> objectNames = pageSpec.getObjects().keySet();
-        PageValidation pageValidation = new PageValidation(browser, browser.getPage(), pageSpec, null, null);
+        Page page = browser.getPage();
+        page.preloadObjects(pageSpec.getObjects().values());
+        PageValidation pageValidation = new PageValidation(browser, page, pageSpec, null, null);
 
         PageDump pageDump = new PageDump();
         pageDump.setTitle(browser.getPage().getTitle());
@@ -170,11 +173,12 @@ public class GalenPageDump {
 
     public void exportAllScreenshots(PageDump pageDump, Browser browser, File reportFolder) throws IOException {
 
-        File screenshotOriginalFile = browser.getPage().getScreenshotFile();
+        Page page = browser.getPage();
+        File screenshotOriginalFile = page.getScreenshotFile();
 
         FileUtils.copyFile(screenshotOriginalFile, new File(reportFolder.getAbsolutePath() + File.separator + "page.png"));
 
-        BufferedImage image = Rainbow4J.loadImage(screenshotOriginalFile.getAbsolutePath());
+        BufferedImage image = page.getScreenshotImage();
 
 
         File objectsFolder = new File(reportFolder.getAbsolutePath() + File.separator + "objects");
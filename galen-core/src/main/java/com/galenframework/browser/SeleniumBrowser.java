@@ -58,6 +58,7 @@ public class SeleniumBrowser implements Browser {
     @Override
     public void load(String url) {
         driver.get(url);
+        SeleniumPage.invalidatePages(driver);
     }
 
     @Override
@@ -84,6 +85,7 @@ public class SeleniumBrowser implements Browser {
     @Override
     public void refresh() {
         driver.navigate().refresh();
+        SeleniumPage.invalidatePages(driver);
     }
 
 }
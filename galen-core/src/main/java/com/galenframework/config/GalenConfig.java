@@ -206,6 +206,14 @@ public class GalenConfig {
         return getIntProperty(GalenProperty.SPEC_IMAGE_TOLERANCE);
     }
 
+    public int getImageSpecComparisonThreads() {
+        int threads = getIntProperty(GalenProperty.SPEC_IMAGE_COMPARISON_THREADS, 0, 1024);
+        if (threads == 0) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        return threads;
+    }
+
     public SpecImage.ErrorRate getImageSpecDefaultErrorRate() {
         return SpecImage.ErrorRate.fromString(readProperty(GalenProperty.SPEC_IMAGE_ERROR_RATE));
     }
@@ -26,12 +26,25 @@ public enum GalenProperty {
     SCREENSHOT_FULLPAGE_SCROLLWAIT("galen.browser.screenshots.fullPage.scrollWait", "0"),
     SPEC_IMAGE_TOLERANCE("galen.spec.image.tolerance", "25"),
     SPEC_IMAGE_ERROR_RATE("galen.spec.image.error", "0px"),
+
+    // amount of threads in the pool which is shared by all image specs for comparing images. 0 means amount of available processors
+    SPEC_IMAGE_COMPARISON_THREADS("galen.spec.image.comparison.threads", "1"),
+
+    // max size in megabytes of decoded sample images kept in memory between image specs, 0 turns off the cache
+    SPEC_IMAGE_CACHE_SIZE("galen.spec.image.cache.size", "256"),
     SPEC_GLOBAL_VISIBILITY_CHECK("galen.spec.global.visibility", "true"),
 
     TEST_JS_SUFFIX("galen.test.js.file.suffix", ".test.js"),
     TEST_SUFFIX("galen.test.file.suffix", ".test"),
     
     TEST_JAVA_REPORT_OUTPUTFOLDER("galen.test.java.report.outputFolder", "target/galen-html-reports"),
+
+    // compression level of png images in reports from 0 (fastest) to 9 (smallest files),
+    // 9 is the level with which ImageIO used to write them on java 8
+    REPORTS_IMAGES_COMPRESSION("galen.reports.images.compression", "9"),
+
+    // amount of threads which write images of reports in background, 0 means that images are written right away
+    REPORTS_IMAGES_WRITER_THREADS("galen.reports.images.writerThreads", "2"),
     TEST_JAVA_TIMEOUT_PAGELOAD("galen.test.java.timeout.pageLoad", "20"),
     TEST_JAVA_TIMEOUT_IMPLICITYWAIT("galen.test.java.timeout.implicitWait", "1"),
     
@@ -55,6 +68,9 @@ public enum GalenProperty {
     GALEN_BROWSER_PAGELEMENT_AREAFINDER("galen.browser.pageElement.areaFinder", "native"),
     GALEN_BROWSER_PAGELEMENT_AREAFINDER_CUSTOM_SCRIPT("galen.browser.pageElement.areaFinder.custom.script", null),
 
+    // finds all objects and measures their areas with a single script before the page is validated
+    GALEN_BROWSER_PAGE_SNAPSHOT("galen.browser.page.snapshot", "true"),
+
     FILE_CREATE_TIMEOUT("galen.file.wait.timeout", "30");
 
 
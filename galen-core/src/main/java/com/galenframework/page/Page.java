@@ -15,8 +15,11 @@
 ******************************************************************************/
 package com.galenframework.page;
 
+import java.awt.Dimension;
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.util.Collection;
+import java.util.concurrent.Callable;
 
 import com.galenframework.specs.page.Locator;
 
@@ -32,6 +35,14 @@ public interface Page {
 
     Page createObjectContextPage(Locator mainObjectLocator);
 
+    /**
+     * Lets the page fetch all objects at once before they are validated. Pages are free to ignore it
+     * and look up the objects one by one later in getObject methods
+     * @param locators locators of objects which are later passed to getObject methods
+     */
+    default void preloadObjects(Collection<Locator> locators) {
+    }
+
     /**
      * Saves a screenshot file for the specific page, so later it will be returned in getScreenshotFile or getScreenshotImage methods
      * @param screenshotFile
@@ -45,12 +56,41 @@ public interface Page {
      */
     BufferedImage getScreenshotImage();
 
+    /**
+     * Size of the image returned by getScreenshotImage. Pages which keep their screenshot encoded can tell it without decoding it
+     * @return
+     */
+    default Dimension getScreenshotSize() {
+        BufferedImage image = getScreenshotImage();
+        return new Dimension(image.getWidth(), image.getHeight());
+    }
+
+    /**
+     * Reads only the given area of the screenshot, so that pages which keep their screenshot encoded
+     * don't have to decode all of it. The returned image should not be modified
+     * @param area area within the bounds of the screenshot
+     * @return
+     */
+    default BufferedImage getScreenshotImage(Rect area) {
+        return getScreenshotImage().getSubimage(area.getLeft(), area.getTop(), area.getWidth(), area.getHeight());
+    }
+
     /**
      * Creates a new screenshot and returns it if there was no screenshot provided via setScreenshot method.
      * @return
      */
     File getScreenshotFile();
 
+    /**
+     * Takes the screenshot right away but doesn't write its file until the returned writer is called.
+     * Pages which can't postpone writing the file give out the file of getScreenshotFile
+     * @return writer of the screenshot file or null in case the page has no screenshot
+     */
+    default Callable<File> getScreenshotFileWriter() {
+        File screenshotFile = getScreenshotFile();
+        return screenshotFile != null ? () -> screenshotFile : null;
+    }
+
     String getTitle();
 
     void switchToFrame(PageElement mainObject);
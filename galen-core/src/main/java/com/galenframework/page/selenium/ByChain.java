@@ -104,7 +104,7 @@ public class ByChain {
         return  byChain;
     }
 
-    private static By convertToBy(Locator locator) {
+    static By convertToBy(Locator locator) {
         if ("xpath".equals(locator.getLocatorType())) {
             return By.xpath(locator.getLocatorValue());
         }
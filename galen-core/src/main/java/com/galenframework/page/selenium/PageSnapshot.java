@@ -0,0 +1,210 @@
+/*******************************************************************************
+* Copyright 2016 Ivan Shubin http://galenframework.com
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*   http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+******************************************************************************/
+package com.galenframework.page.selenium;
+
+import com.galenframework.config.GalenConfig;
+import com.galenframework.config.GalenProperty;
+import com.galenframework.page.Rect;
+import com.galenframework.specs.page.Locator;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.SearchContext;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+
+import java.util.*;
+
+/**
+ * Elements and areas of page objects, together with the size of the screen and viewport,
+ * which are fetched with a single script, so that validation of a page doesn't make separate driver calls for each object.
+ * For the "native" area finder the area is measured the way the WebDriver "Get Element Rect" command defines it,
+ * which is what getLocation and getSize return, so it is the same as with the "jsbased" area finder.
+ * The "custom" area finder runs its script for each element within the snapshot script.
+ * Visibility and text are still read from the elements one by one when a spec needs them, as the driver computes them
+ * with its own atoms which a page script can't reproduce exactly.
+ */
+public class PageSnapshot {
+
+    private final Map<List<List<Object>>, SnapshotObject> objects = new HashMap<>();
+    private Rect screenArea;
+    private Rect viewportArea;
+
+    private PageSnapshot() {
+    }
+
+    /**
+     * @param searchContext either the driver or an element in which the objects are searched
+     * @return the snapshot or null in case the driver didn't give back the result of the script
+     */
+    public static PageSnapshot take(WebDriver driver, SearchContext searchContext, Collection<Locator> locators) {
+        Set<List<List<Object>>> uniqueChains = new LinkedHashSet<>();
+        for (Locator locator : locators) {
+            uniqueChains.add(toChain(locator));
+        }
+        List<List<List<Object>>> chains = new ArrayList<>(uniqueChains);
+
+        String customAreaScript = null;
+        String areaFinderName = GalenConfig.getConfig().getStringProperty(GalenProperty.GALEN_BROWSER_PAGELEMENT_AREAFINDER);
+        if (AreaFinder.valueOf(areaFinderName.toUpperCase()) == AreaFinder.CUSTOM) {
+            customAreaScript = GalenConfig.getConfig().getStringProperty(GalenProperty.GALEN_BROWSER_PAGELEMENT_AREAFINDER_CUSTOM_SCRIPT);
+        }
+
+        Object rootElement = searchContext instanceof WebElement ? searchContext : null;
+        List<?> snapshotResult = (List<?>) ((JavascriptExecutor) driver).executeScript(SNAPSHOT_SCRIPT, chains, customAreaScript, rootElement);
+        if (snapshotResult == null) {
+            return null;
+        }
+
+        PageSnapshot snapshot = new PageSnapshot();
+        List<?> results = (List<?>) snapshotResult.get(0);
+        for (int i = 0; i < chains.size() && i < results.size(); i++) {
+            if (results.get(i) != null) {
+                snapshot.objects.put(chains.get(i), new SnapshotObject((List<?>) results.get(i)));
+            }
+        }
+        snapshot.screenArea = toArea((List<?>) snapshotResult.get(1));
+        snapshot.viewportArea = toArea((List<?>) snapshotResult.get(2));
+        return snapshot;
+    }
+
+    private static Rect toArea(List<?> size) {
+        return new Rect(0, 0, ((Number) size.get(0)).intValue(), ((Number) size.get(1)).intValue());
+    }
+
+    /**
+     * @return the object found with the same locator chain, or null in case it couldn't be resolved by the snapshot
+     */
+    public SnapshotObject get(Locator locator) {
+        return objects.get(toChain(locator));
+    }
+
+    /**
+     * @return area of the whole page measured the same way as in {@link ScreenElement}
+     */
+    public Rect getScreenArea() {
+        return screenArea;
+    }
+
+    /**
+     * @return area of the viewport measured the same way as in {@link ViewportElement}
+     */
+    public Rect getViewportArea() {
+        return viewportArea;
+    }
+
+    /**
+     * Converts the locator to a list of [type, value, index] starting from the topmost parent.
+     * Unlike the locator itself, the chain takes the indexes into account, so it is also used to tell objects apart
+     */
+    private static List<List<Object>> toChain(Locator locator) {
+        LinkedList<List<Object>> chain = new LinkedList<>();
+        for (Locator current = locator; current != null; current = current.getParent()) {
+            chain.addFirst(Arrays.<Object>asList(current.getLocatorType(), current.getLocatorValue(), current.getIndex()));
+        }
+        return chain;
+    }
+
+    public static class SnapshotObject {
+        private final WebElement webElement;
+        private final int count;
+        private final Rect area;
+
+        private SnapshotObject(List<?> result) {
+            this.webElement = (WebElement) result.get(0);
+            this.count = ((Number) result.get(1)).intValue();
+            List<?> area = webElement != null && result.size() > 2 ? (List<?>) result.get(2) : null;
+            if (area != null) {
+                this.area = new Rect(((Number) area.get(0)).intValue(), ((Number) area.get(1)).intValue(),
+                        ((Number) area.get(2)).intValue(), ((Number) area.get(3)).intValue());
+            } else {
+                this.area = null;
+            }
+        }
+
+        /**
+         * @return the element which would be returned by {@link ByChain#findElement(SearchContext)} or null if it is absent
+         */
+        public WebElement getWebElement() {
+            return webElement;
+        }
+
+        /**
+         * @return amount of elements which would be returned by {@link ByChain#findElements(SearchContext)}
+         */
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * @return area of the element or null in case the script couldn't measure it and it should be found with the configured area finder
+         */
+        public Rect getArea() {
+            return area;
+        }
+    }
+
+    /**
+     * Resolves the locator chains the same way as {@link ByChain} does. Each object is resolved separately,
+     * so that an invalid locator only makes its object to be looked up without the snapshot
+     */
+    private static final String SNAPSHOT_SCRIPT = "var chains = arguments[0], " +
+            "customArea = arguments[1] ? new Function(arguments[1]) : null, " +
+            "root = arguments[2] || document, " +
+            "scrollTop = window.pageYOffset || document.documentElement.scrollTop, " +
+            "scrollLeft = window.pageXOffset || document.documentElement.scrollLeft;" +
+
+            "function find(context, type, value) {" +
+            "  if (type === 'css') { return Array.prototype.slice.call(context.querySelectorAll(value)); }" +
+            "  if (type === 'id') { return Array.prototype.filter.call(context.querySelectorAll('[id]'), function (e) { return e.id === value; }); }" +
+            "  if (type === 'xpath') {" +
+            "    var result = document.evaluate(value, context, null, XPathResult.ORDERED_NODE_SNAPSHOT_TYPE, null), found = [];" +
+            "    for (var i = 0; i < result.snapshotLength; i++) { if (result.snapshotItem(i).nodeType === 1) { found.push(result.snapshotItem(i)); } }" +
+            "    return found;" +
+            "  }" +
+            "  throw new Error('Unknown locator type: ' + type);" +
+            "}" +
+
+            "function snapshot(chain) {" +
+            "  var context = root, elements = [];" +
+            "  for (var i = 0; i < chain.length; i++) {" +
+            "    elements = find(context, chain[i][0], chain[i][1]);" +
+            "    if (i < chain.length - 1) {" +
+            "      var index = chain[i][2] > 0 ? chain[i][2] - 1 : 0;" +
+            "      if (index >= elements.length) { return [null, 0]; }" +
+            "      context = elements[index];" +
+            "    }" +
+            "  }" +
+            "  var last = chain[chain.length - 1][2], element = elements[last > 0 ? last - 1 : 0];" +
+            "  if (!element) { return [null, elements.length]; }" +
+            "  var area = null;" +
+            "  if (customArea) { area = customArea.call(null, element); }" +
+            "  else { var rect = element.getBoundingClientRect(); area = [rect.left + scrollLeft, rect.top + scrollTop, rect.width, rect.height]; }" +
+            "  return [element, elements.length, area];" +
+            "}" +
+
+            "var results = [];" +
+            "for (var c = 0; c < chains.length; c++) {" +
+            "  try { results.push(snapshot(chains[c])); } catch (e) { results.push(null); }" +
+            "}" +
+            "return [results, [" +
+            "  Math.max(document.documentElement.scrollWidth, document.body.offsetWidth, document.documentElement.offsetWidth," +
+            "    document.body.clientWidth, document.documentElement.clientWidth)," +
+            "  Math.max(document.documentElement.scrollHeight, document.body.offsetHeight, document.documentElement.offsetHeight," +
+            "    document.body.clientHeight, document.documentElement.clientHeight)" +
+            "], [" +
+            "  document.documentElement.clientWidth || document.body.clientWidth || window.innerWidth," +
+            "  document.documentElement.clientHeight || document.body.clientHeight || window.innerHeight" +
+            "]];";
+}
@@ -26,14 +26,26 @@ import org.openqa.selenium.WebDriver;
 public class ScreenElement extends PageElement {
 
     private WebDriver driver;
+    private Rect area;
 
     public ScreenElement(WebDriver driver) {
         this.driver = driver;
     }
 
+    /**
+     * @param area already measured area, e.g. taken from {@link PageSnapshot}, so that the driver is not asked for it
+     */
+    public ScreenElement(WebDriver driver, Rect area) {
+        this.driver = driver;
+        this.area = area;
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     public Rect calculateArea() {
+        if (area != null) {
+            return area;
+        }
         List<Number> size = (List<Number>)((JavascriptExecutor)driver).executeScript("return [Math.max(" +
                     "document.documentElement.scrollWidth," +
                     "document.body.offsetWidth, document.documentElement.offsetWidth," +
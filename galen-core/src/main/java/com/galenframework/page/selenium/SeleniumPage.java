@@ -15,12 +15,17 @@
 ******************************************************************************/
 package com.galenframework.page.selenium;
 
+import java.awt.Dimension;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
 
 import com.galenframework.config.GalenConfig;
 import com.galenframework.config.GalenProperty;
@@ -29,23 +34,49 @@ import com.galenframework.page.AbsentPageElement;
 import com.galenframework.page.Page;
 import com.galenframework.page.PageElement;
 import com.galenframework.specs.page.Locator;
+import com.galenframework.rainbow4j.ImageHandler;
+import com.galenframework.rainbow4j.PngEncoder;
 import com.galenframework.rainbow4j.Rainbow4J;
 
 import com.galenframework.utils.GalenUtils;
+import com.galenframework.utils.TiledScreenshot;
 import org.openqa.selenium.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import static com.galenframework.page.selenium.ByChain.fromLocator;
 
 public class SeleniumPage implements Page {
 
+    private final static Logger LOG = LoggerFactory.getLogger(SeleniumPage.class);
+
     private WebDriver driver;
     
     private Map<String, PageElement> cachedPageElements = new HashMap<>();
+
+    private Map<String, List<WebElement>> cachedElementLists = new HashMap<>();
+
+    private PageSnapshot snapshot;
+
+    /**
+     * Special objects are measured once per page, until the page is invalidated, see {@link #invalidate()}
+     */
+    private PageElement cachedScreenElement;
+    private PageElement cachedViewportElement;
+
+    /**
+     * Version of the state of each driver, which changes whenever its window is resized, scrolled or navigated by Galen.
+     * Pages compare it with the version they were measured at, so that a page which is kept for longer
+     * doesn't give out the elements and areas of the previous state
+     */
+    private static final Map<WebDriver, Integer> driverStates = Collections.synchronizedMap(new WeakHashMap<>());
+    private int measuredDriverState;
     
     private PageElement parentObject;
 
+    private TiledScreenshot capturedScreenshot;
     private BufferedImage cachedScreenshotImage;
-    private File cachedScreenshotFile;
+    private Callable<File> screenshotFileWriter;
     private int offsetLeft = 0;
     private int offsetTop = 0;
 
@@ -57,11 +88,13 @@ public class SeleniumPage implements Page {
 
     private SeleniumPage(WebDriver driver, SearchContext driverSearchContext) {
         this.driver = driver;
+        this.measuredDriverState = driverStates.getOrDefault(driver, 0);
         this.driverSearchContext = driverSearchContext;
     }
 
     private SeleniumPage(WebDriver driver, SearchContext searchContext, Locator objectContextLocator) {
         this.driver = driver;
+        this.measuredDriverState = driverStates.getOrDefault(driver, 0);
 
         WebElement contextElement = findObjectContext(searchContext, objectContextLocator);
         this.driverSearchContext = contextElement;
@@ -86,11 +119,13 @@ public class SeleniumPage implements Page {
 
     @Override
     public PageElement getObject(Locator objectLocator) {
+        checkDriverState();
         return locatorToElement("unnamed", objectLocator);
     }
 
     @Override
     public PageElement getObject(String objectName, Locator objectLocator) {
+        checkDriverState();
         if (objectName != null) {
             PageElement pageElement = cachedPageElements.get(objectName);
 
@@ -107,36 +142,108 @@ public class SeleniumPage implements Page {
 
     }
 
-    private List<WebElement> driverFindElements(ByChain byChain) {
-        return byChain.findElements(driverSearchContext);
+    private PageElement locatorToElement(String objectName, Locator objectLocator) {
+        PageSnapshot.SnapshotObject snapshotObject = snapshot != null ? snapshot.get(objectLocator) : null;
+        if (snapshotObject != null) {
+            if (snapshotObject.getWebElement() != null) {
+                return new SnapshotPageElement(driver, objectName, snapshotObject, objectLocator).withOffset(offsetLeft, offsetTop);
+            } else {
+                return new AbsentPageElement();
+            }
+        }
+
+        List<WebElement> elements = findAllElements(objectLocator);
+        int index = objectLocator.getIndex() > 0 ? objectLocator.getIndex() - 1 : 0;
+        if (index < elements.size()) {
+            return new FoundWebPageElement(driver, objectName, elements.get(index), objectLocator).withOffset(offsetLeft, offsetTop);
+        } else {
+            return new AbsentPageElement();
+        }
+    }
+
+    /**
+     * Finds all elements which match the locator regardless of its own index, the same way {@link ByChain#findElements(SearchContext)} does.
+     * Found elements are remembered per locator chain, so that parents shared by many objects (e.g. "header" in "header.menu.item-*")
+     * and the elements of multi-object definitions are found only once. Empty results are not remembered,
+     * as the elements might still appear on the page.
+     * In case one of the remembered parents got stale, everything is found again from scratch
+     */
+    private List<WebElement> findAllElements(Locator locator) {
+        try {
+            return findAllElementsInChain(locator);
+        } catch (StaleElementReferenceException e) {
+            cachedElementLists.clear();
+            return findAllElementsInChain(locator);
+        }
     }
 
-    private WebElement driverFindElement(ByChain byChain) {
-        return byChain.findElement(driverSearchContext);
+    private List<WebElement> findAllElementsInChain(Locator locator) {
+        String key = baseLocatorKey(locator);
+        List<WebElement> elements = cachedElementLists.get(key);
+        if (elements == null) {
+            SearchContext searchContext = driverSearchContext;
+
+            Locator parent = locator.getParent();
+            if (parent != null) {
+                List<WebElement> parentElements = findAllElementsInChain(parent);
+                int parentIndex = parent.getIndex() > 0 ? parent.getIndex() - 1 : 0;
+                searchContext = parentIndex < parentElements.size() ? parentElements.get(parentIndex) : null;
+            }
+
+            if (searchContext != null) {
+                elements = searchContext.findElements(ByChain.convertToBy(locator));
+            } else {
+                elements = Collections.emptyList();
+            }
+            if (!elements.isEmpty()) {
+                cachedElementLists.put(key, elements);
+            }
+        }
+        return elements;
     }
 
-    private PageElement locatorToElement(String objectName, Locator objectLocator) {
-        PageElement pageElement;
-        ByChain byChain = fromLocator(objectLocator);
+    /**
+     * Forgets the elements found with the locator and everything that was found inside of them,
+     * so that they are found again the next time they are needed
+     */
+    private void evictElements(Locator locator) {
+        String key = baseLocatorKey(locator);
+        String ownKey = locatorKey(locator);
+        String childKeySuffix = "\n" + ownKey + "#" + locator.getIndex() + key.substring(ownKey.length());
+        cachedElementLists.keySet().removeIf(cachedKey -> cachedKey.equals(key) || cachedKey.endsWith(childKeySuffix));
+    }
 
-        try {
-            WebElement webElement = driverFindElement(byChain);
-            pageElement = new WebPageElement(driver, objectName, webElement, objectLocator).withOffset(offsetLeft, offsetTop);
-        } catch (NoSuchElementException e) {
-            pageElement = new AbsentPageElement();
+    /**
+     * @return key of the locator chain in which only the locator itself is taken without its index
+     */
+    private static String baseLocatorKey(Locator locator) {
+        StringBuilder key = new StringBuilder(locatorKey(locator));
+        for (Locator parent = locator.getParent(); parent != null; parent = parent.getParent()) {
+            key.append('\n').append(locatorKey(parent)).append('#').append(parent.getIndex());
         }
-        return pageElement;
+        return key.toString();
+    }
+
+    private static String locatorKey(Locator locator) {
+        return locator.getLocatorType() + ":" + locator.getLocatorValue();
     }
 
 
 
     @Override
     public PageElement getSpecialObject(String objectName) {
+        checkDriverState();
         if ("screen".equals(objectName)) {
-            return new ScreenElement(driver).withOffset(offsetLeft, offsetTop);
+            if (cachedScreenElement == null) {
+                measureSpecialObjects();
+            }
+            return cachedScreenElement;
         }
         else if ("viewport".equals(objectName)) {
-            return new ViewportElement(driver);
+            if (cachedViewportElement == null) {
+                measureSpecialObjects();
+            }
+            return cachedViewportElement;
         }
         else if ("parent".equals(objectName) || "self".equals(objectName)) {
             if (parentObject != null) {
@@ -148,9 +255,52 @@ public class SeleniumPage implements Page {
     }
 
 
+    /**
+     * Measures the screen and viewport together, with the page snapshot if there is one or otherwise with a single script.
+     * In case the script fails each of them is measured separately later
+     */
+    private void measureSpecialObjects() {
+        PageSnapshot measured = snapshot;
+        if (measured == null) {
+            try {
+                measured = PageSnapshot.take(driver, driverSearchContext, Collections.<Locator>emptyList());
+            } catch (WebDriverException ex) {
+                LOG.trace("Couldn't measure screen and viewport with a single script", ex);
+            }
+        }
+
+        if (measured != null) {
+            cachedScreenElement = new ScreenElement(driver, measured.getScreenArea()).withOffset(offsetLeft, offsetTop);
+            cachedViewportElement = new ViewportElement(driver, measured.getViewportArea());
+        } else {
+            cachedScreenElement = new ScreenElement(driver).withOffset(offsetLeft, offsetTop);
+            cachedViewportElement = new ViewportElement(driver);
+        }
+    }
+
     @Override
     public int getObjectCount(Locator locator) {
-        return driverFindElements(fromLocator(locator)).size();
+        checkDriverState();
+        PageSnapshot.SnapshotObject snapshotObject = snapshot != null ? snapshot.get(locator) : null;
+        if (snapshotObject != null) {
+            return snapshotObject.getCount();
+        }
+        return findAllElements(locator).size();
+    }
+
+    @Override
+    public void preloadObjects(Collection<Locator> locators) {
+        checkDriverState();
+        if (GalenConfig.getConfig().getBooleanProperty(GalenProperty.GALEN_BROWSER_PAGE_SNAPSHOT)) {
+            try {
+                snapshot = PageSnapshot.take(driver, driverSearchContext, locators);
+                cachedScreenElement = null;
+                cachedViewportElement = null;
+            } catch (WebDriverException ex) {
+                LOG.warn("Couldn't take page snapshot, objects will be fetched one by one", ex);
+                snapshot = null;
+            }
+        }
     }
 
     @Override
@@ -160,38 +310,91 @@ public class SeleniumPage implements Page {
 
     @Override
     public File getScreenshotFile() {
-        if (this.cachedScreenshotFile == null) {
-            cachedScreenshotFile = createNewScreenshot();
+        try {
+            return getScreenshotFileWriter().call();
+        } catch (Exception e) {
+            throw new RuntimeException("Error making screenshot", e);
         }
+    }
 
-        return this.cachedScreenshotFile;
+    @Override
+    public Callable<File> getScreenshotFileWriter() {
+        if (this.screenshotFileWriter == null) {
+            // the file is only needed for reports, so it is not written until a report is saved
+            screenshotFileWriter = new ScreenshotFileWriter(getCapturedScreenshot());
+        }
+        return this.screenshotFileWriter;
     }
 
-    private File createNewScreenshot() {
+    private TiledScreenshot getCapturedScreenshot() {
+        if (this.capturedScreenshot == null) {
+            capturedScreenshot = captureScreenshot();
+        }
+        return this.capturedScreenshot;
+    }
+
+    private TiledScreenshot captureScreenshot() {
         try {
             if (GalenConfig.getConfig().getBooleanProperty(GalenProperty.SCREENSHOT_FULLPAGE)) {
-                return GalenUtils.makeFullScreenshot(driver);
+                return GalenUtils.makeFullTiledScreenshot(driver);
             }
-            else return makeSimpleScreenshot();
+            else return GalenUtils.takeTiledScreenshot(driver);
         } catch (Exception e) {
             throw new RuntimeException("Error making screenshot", e);
         }
     }
 
-    private File makeSimpleScreenshot() throws IOException {
-        return GalenUtils.takeScreenshot(driver);
-    }
-
     @Override
     public void setScreenshot(File screenshotFile) {
-        this.cachedScreenshotFile = screenshotFile;
+        this.screenshotFileWriter = screenshotFile != null ? () -> screenshotFile : null;
+        this.capturedScreenshot = null;
+        this.cachedScreenshotImage = null;
+        invalidate();
+    }
+
+    /**
+     * Forgets the measured screen and viewport, the page snapshot and all found elements,
+     * so that they are taken from the browser again the next time they are needed.
+     * It is called when the page switches frames or gets another screenshot,
+     * and when the driver of the page was resized, scrolled or navigated, see {@link #invalidatePages(WebDriver)}
+     */
+    public void invalidate() {
+        cachedScreenElement = null;
+        cachedViewportElement = null;
+        snapshot = null;
+        cachedElementLists.clear();
+        cachedPageElements.clear();
+    }
+
+    /**
+     * Makes all pages of the driver forget what they measured before they are used again.
+     * It is called by Galen whenever it resizes, scrolls or navigates the browser window.
+     * In case the page is changed through the driver directly, it has to be called explicitly
+     */
+    public static void invalidatePages(WebDriver driver) {
+        driverStates.merge(driver, 1, Integer::sum);
+    }
+
+    private void checkDriverState() {
+        int driverState = driverStates.getOrDefault(driver, 0);
+        if (driverState != measuredDriverState) {
+            measuredDriverState = driverState;
+            invalidate();
+        }
     }
 
     @Override
     public BufferedImage getScreenshotImage() {
         if (this.cachedScreenshotImage == null) {
             try {
-                cachedScreenshotImage = Rainbow4J.loadImage(getScreenshotFile().getAbsolutePath());
+                // the screenshot is decoded only once and kept in the same layout which Rainbow4J uses for comparison,
+                // so that all specs on this page could read their areas from it without copying the whole screenshot.
+                // A screenshot taken from the browser is decoded straight from memory without reading it from the file
+                if (isScreenshotFileProvided()) {
+                    cachedScreenshotImage = ImageHandler.copyToRgbaImage(Rainbow4J.loadImage(getScreenshotFile().getAbsolutePath()));
+                } else {
+                    cachedScreenshotImage = getCapturedScreenshot().toImage();
+                }
             } catch (Exception e) {
                 throw new RuntimeException("Couldn't take screenshot for page", e);
             }
@@ -199,6 +402,36 @@ public class SeleniumPage implements Page {
         return this.cachedScreenshotImage;
     }
 
+    @Override
+    public Dimension getScreenshotSize() {
+        if (this.cachedScreenshotImage == null && !isScreenshotFileProvided()) {
+            TiledScreenshot screenshot = getCapturedScreenshot();
+            return new Dimension(screenshot.getWidth(), screenshot.getHeight());
+        }
+        BufferedImage image = getScreenshotImage();
+        return new Dimension(image.getWidth(), image.getHeight());
+    }
+
+    /**
+     * Decodes only the tiles of the captured screenshot which intersect with the area,
+     * unless the whole screenshot was already decoded for another spec
+     */
+    @Override
+    public BufferedImage getScreenshotImage(Rect area) {
+        if (this.cachedScreenshotImage == null && !isScreenshotFileProvided()) {
+            try {
+                return getCapturedScreenshot().readArea(area.toAwtRectangle());
+            } catch (Exception e) {
+                throw new RuntimeException("Couldn't take screenshot for page", e);
+            }
+        }
+        return getScreenshotImage().getSubimage(area.getLeft(), area.getTop(), area.getWidth(), area.getHeight());
+    }
+
+    private boolean isScreenshotFileProvided() {
+        return this.capturedScreenshot == null && this.screenshotFileWriter != null;
+    }
+
     @Override
     public String getTitle() {
         return driver.getTitle();
@@ -208,11 +441,13 @@ public class SeleniumPage implements Page {
     public void switchToFrame(PageElement mainObject) {
         WebPageElement webPageElement = (WebPageElement)mainObject;
         driver.switchTo().frame(webPageElement.getWebElement());
+        invalidate();
     }
 
     @Override
     public void switchToParentFrame() {
         driver.switchTo().parentFrame();
+        invalidate();
     }
 
     @Override
@@ -242,4 +477,72 @@ public class SeleniumPage implements Page {
     public WebDriver getDriver() {
         return driver;
     }
+
+    /**
+     * Element found with the remembered element lists. In case it got stale, its lists are forgotten,
+     * so that the object is found again the next time it is asked from the page
+     */
+    private class FoundWebPageElement extends WebPageElement {
+
+        FoundWebPageElement(WebDriver driver, String objectName, WebElement webElement, Locator objectLocator) {
+            super(driver, objectName, webElement, objectLocator);
+        }
+
+        private void forget() {
+            evictElements(getLocator());
+            cachedPageElements.values().remove(this);
+        }
+
+        @Override
+        protected Rect findArea() {
+            try {
+                return super.findArea();
+            } catch (StaleElementReferenceException e) {
+                forget();
+                throw e;
+            }
+        }
+
+        @Override
+        public boolean isVisible() {
+            try {
+                return super.isVisible();
+            } catch (StaleElementReferenceException e) {
+                forget();
+                throw e;
+            }
+        }
+
+        @Override
+        public String getText() {
+            try {
+                return super.getText();
+            } catch (StaleElementReferenceException e) {
+                forget();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Writes the captured screenshot to a temp file on the first call and returns the same file afterwards
+     */
+    private static class ScreenshotFileWriter implements Callable<File> {
+        private final TiledScreenshot screenshot;
+        private File file;
+
+        ScreenshotFileWriter(TiledScreenshot screenshot) {
+            this.screenshot = screenshot;
+        }
+
+        @Override
+        public synchronized File call() throws IOException {
+            if (file == null) {
+                File tempFile = File.createTempFile("screenshot", ".png");
+                screenshot.writeTo(tempFile, PngEncoder.DEFAULT_COMPRESSION);
+                file = tempFile;
+            }
+            return file;
+        }
+    }
 }
@@ -0,0 +1,41 @@
+/*******************************************************************************
+* Copyright 2016 Ivan Shubin http://galenframework.com
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*   http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+******************************************************************************/
+package com.galenframework.page.selenium;
+
+import com.galenframework.page.Rect;
+import com.galenframework.specs.page.Locator;
+import org.openqa.selenium.WebDriver;
+
+/**
+ * Web page element which takes its area from the {@link PageSnapshot} instead of asking the driver,
+ * unless the snapshot couldn't measure it.
+ * Everything else, like visibility, text and css properties, is still read from the element itself.
+ */
+public class SnapshotPageElement extends WebPageElement {
+
+    private final PageSnapshot.SnapshotObject snapshotObject;
+
+    public SnapshotPageElement(WebDriver driver, String objectName, PageSnapshot.SnapshotObject snapshotObject, Locator objectLocator) {
+        super(driver, objectName, snapshotObject.getWebElement(), objectLocator);
+        this.snapshotObject = snapshotObject;
+    }
+
+    @Override
+    protected Rect findArea() {
+        Rect area = snapshotObject.getArea();
+        return area != null ? area : super.findArea();
+    }
+}
@@ -26,14 +26,26 @@ import org.openqa.selenium.WebDriver;
 public class ViewportElement extends PageElement {
 
     private WebDriver driver;
+    private Rect area;
 
     public ViewportElement(WebDriver driver) {
         this.driver = driver;
     }
 
+    /**
+     * @param area already measured area, e.g. taken from {@link PageSnapshot}, so that the driver is not asked for it
+     */
+    public ViewportElement(WebDriver driver, Rect area) {
+        this.driver = driver;
+        this.area = area;
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     public Rect calculateArea() {
+        if (area != null) {
+            return area;
+        }
         Dimension viewportArea = GalenUtils.getViewportArea(driver);
         return new Rect(0, 0, viewportArea.width, viewportArea.height);
     }
@@ -45,7 +45,7 @@ public class WebPageElement extends PageElement {
     @Override
     public Rect calculateArea() {
         if (cachedArea == null) {
-            cachedArea = getAreaFinder().findArea(this);
+            cachedArea = findArea();
             if (getLocator() != null && getLocator().getCorrections() != null) {
                 cachedArea = correctedRect(cachedArea, getLocator().getCorrections());
             }
@@ -53,6 +53,10 @@ public class WebPageElement extends PageElement {
         return cachedArea;
     }
 
+    protected Rect findArea() {
+        return getAreaFinder().findArea(this);
+    }
+
     private AreaFinder getAreaFinder() {
         String areaFinderName = GalenConfig.getConfig().getStringProperty(GalenProperty.GALEN_BROWSER_PAGELEMENT_AREAFINDER);
         return AreaFinder.valueOf(areaFinderName.toUpperCase());
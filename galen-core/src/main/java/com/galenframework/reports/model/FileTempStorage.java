@@ -23,6 +23,9 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 /**
  * Created by ishubin on 2/17/15.
@@ -32,6 +35,8 @@ public class FileTempStorage {
     private final String storageName;
     private Map<String, File> files = new HashMap<>();
     private List<FileTempStorage> childStorages = new LinkedList<>();
+    private final List<Future<?>> pendingWrites = new LinkedList<>();
+    private final Map<String, Callable<File>> lazyFiles = new HashMap<>();
 
     private static long _uniqueId = 0;
 
@@ -51,11 +56,72 @@ public class FileTempStorage {
     }
 
 
+    /**
+     * Registers a file which is still being written. All pending files are waited for before they are copied
+     */
+    public String registerFile(String fileName, File file, Future<?> pendingWrite) {
+        synchronized (pendingWrites) {
+            pendingWrites.add(pendingWrite);
+        }
+        return registerFile(fileName, file);
+    }
+
+    /**
+     * Registers a file which is not created yet, e.g. a page screenshot. The file is only written
+     * on the first {@link #copyAllFilesTo(File)} so it is never created for reports which are not saved
+     */
+    public String registerFile(String fileName, Callable<File> lazyFile) {
+        String uniqueName = storageName + "-" + getUniqueId() + "-" + fileName;
+        synchronized (pendingWrites) {
+            lazyFiles.put(uniqueName, lazyFile);
+        }
+        return uniqueName;
+    }
+
+    private void writeLazyFiles() throws IOException {
+        Map<String, Callable<File>> writers;
+        synchronized (pendingWrites) {
+            writers = new HashMap<>(lazyFiles);
+            lazyFiles.clear();
+        }
+
+        for (Map.Entry<String, Callable<File>> writer : writers.entrySet()) {
+            try {
+                files.put(writer.getKey(), writer.getValue().call());
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException("Couldn't write report file", e);
+            }
+        }
+    }
+
+    public void awaitPendingWrites() throws IOException {
+        List<Future<?>> writes;
+        synchronized (pendingWrites) {
+            writes = new LinkedList<>(pendingWrites);
+            pendingWrites.clear();
+        }
+
+        for (Future<?> write : writes) {
+            try {
+                write.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for report files", e);
+            } catch (ExecutionException e) {
+                throw new IOException("Couldn't write report file", e.getCause());
+            }
+        }
+    }
+
     public Map<String, File> getFiles() {
         return files;
     }
 
     public void copyAllFilesTo(File dir) throws IOException {
+        writeLazyFiles();
+        awaitPendingWrites();
         for (Map.Entry<String, File> entry : files.entrySet()) {
             FileUtils.copyFile(entry.getValue(), new File(dir.getAbsolutePath() + File.separator + entry.getKey()));
         }
@@ -81,6 +147,16 @@ public class FileTempStorage {
             }
         }
 
+        synchronized (pendingWrites) {
+            lazyFiles.clear();
+        }
+
+        try {
+            awaitPendingWrites();
+        } catch (IOException e) {
+            // files are deleted anyway
+        }
+
         for (File file : this.files.values()) {
             FileUtils.deleteQuietly(file);
         }
@@ -18,7 +18,6 @@ package com.galenframework.reports.model;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 
 import com.galenframework.validation.ValidationResult;
-import com.galenframework.rainbow4j.Rainbow4J;
 
 import java.awt.image.BufferedImage;
 import java.io.File;
@@ -28,6 +27,8 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 public class LayoutReport {
     
@@ -140,15 +141,15 @@ public class LayoutReport {
 
     /**
      * Saves image in temporary png file and generates a name for it.
+     * The file is written in background, see {@link ReportImageWriter}
      * @param prefix
      * @param image
      * @return
      */
     public String registerImageFile(String prefix, BufferedImage image) throws IOException {
         File file = File.createTempFile(prefix, ".png");
-        Rainbow4J.saveImage(image, file);
 
-        return fileStorage.registerFile(prefix + ".png", file);
+        return fileStorage.registerFile(prefix + ".png", file, ReportImageWriter.write(image, file));
     }
 
 
@@ -156,4 +157,8 @@ public class LayoutReport {
         return fileStorage.registerFile(fileName, file);
 
     }
+
+    public String registerFile(String fileName, Callable<File> lazyFile) {
+        return fileStorage.registerFile(fileName, lazyFile);
+    }
 }
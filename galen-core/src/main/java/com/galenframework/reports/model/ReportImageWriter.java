@@ -0,0 +1,110 @@
+/*******************************************************************************
+* Copyright 2016 Ivan Shubin http://galenframework.com
+* 
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* 
+*   http://www.apache.org/licenses/LICENSE-2.0
+* 
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+******************************************************************************/
+package com.galenframework.reports.model;
+
+import com.galenframework.config.GalenConfig;
+import com.galenframework.config.GalenProperty;
+import com.galenframework.rainbow4j.Rainbow4J;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.*;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes report images as png files in background threads, so that validation doesn't wait for images to be encoded.
+ * The amount of threads is configured with "galen.reports.images.writerThreads" and the compression level
+ * with "galen.reports.images.compression". Images should not be modified after they are passed to the writer.
+ * The threads don't keep the JVM running, but a shutdown hook waits for the images which are still being written,
+ * so that the reports are complete even if the JVM exits right after they were generated.
+ */
+public class ReportImageWriter {
+    private final static Logger LOG = LoggerFactory.getLogger(ReportImageWriter.class);
+
+    /**
+     * How long the shutdown hook waits for pending images
+     */
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 60;
+
+    private static ExecutorService executor;
+    private static boolean shutdownHookRegistered = false;
+
+    public static Future<?> write(BufferedImage image, File file) throws IOException {
+        int compressionLevel = GalenConfig.getConfig().getIntProperty(GalenProperty.REPORTS_IMAGES_COMPRESSION, 0, 9);
+        ExecutorService executor = getExecutor();
+
+        if (executor == null) {
+            Rainbow4J.saveImage(image, file, compressionLevel);
+            return CompletableFuture.completedFuture(null);
+        } else {
+            return executor.submit(() -> {
+                Rainbow4J.saveImage(image, file, compressionLevel);
+                return null;
+            });
+        }
+    }
+
+    /**
+     * Waits for all images which were passed to the writer so far and stops its threads.
+     * The writer starts new threads in case more images are written afterwards
+     * @return false if some of the images were still not written within the given time
+     */
+    public static boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        ExecutorService executor;
+        synchronized (ReportImageWriter.class) {
+            executor = ReportImageWriter.executor;
+            ReportImageWriter.executor = null;
+        }
+        if (executor != null) {
+            executor.shutdown();
+            return executor.awaitTermination(timeout, unit);
+        }
+        return true;
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            int threads = GalenConfig.getConfig().getIntProperty(GalenProperty.REPORTS_IMAGES_WRITER_THREADS, 0, 64);
+            if (threads > 0) {
+                executor = Executors.newFixedThreadPool(threads, runnable -> {
+                    Thread thread = new Thread(runnable, "galen-report-image-writer");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                registerShutdownHook();
+            }
+        }
+        return executor;
+    }
+
+    private static void registerShutdownHook() {
+        if (!shutdownHookRegistered) {
+            shutdownHookRegistered = true;
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    if (!shutdown(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                        LOG.warn("Some report images were not written within " + SHUTDOWN_TIMEOUT_SECONDS + " seconds");
+                    }
+                } catch (InterruptedException e) {
+                    LOG.warn("Interrupted while waiting for report images", e);
+                }
+            }, "galen-report-image-writer-shutdown"));
+        }
+    }
+}
@@ -15,9 +15,7 @@
 ******************************************************************************/
 package com.galenframework.speclang2.pagespec;
 
-import com.galenframework.page.selenium.ScreenElement;
 import com.galenframework.page.selenium.SeleniumPage;
-import com.galenframework.page.selenium.ViewportElement;
 import com.galenframework.parser.*;
 import com.galenframework.specs.page.PageSection;
 import com.galenframework.javascript.GalenJsExecutor;
@@ -100,8 +98,8 @@ public class PageSpecHandler implements VarsParserJsFunctions {
 
         if (pageSpecHandler.page instanceof SeleniumPage) {
             SeleniumPage seleniumPage = (SeleniumPage) pageSpecHandler.page;
-            js.putObject("screen", new JsPageElement("screen", new ScreenElement(seleniumPage.getDriver())));
-            js.putObject("viewport", new JsPageElement("viewport", new ViewportElement(seleniumPage.getDriver())));
+            js.putObject("screen", new JsPageElement("screen", seleniumPage.getSpecialObject("screen")));
+            js.putObject("viewport", new JsPageElement("viewport", seleniumPage.getSpecialObject("viewport")));
         }
 
         js.getScope().defineProperty("isVisible", new BaseFunction() {
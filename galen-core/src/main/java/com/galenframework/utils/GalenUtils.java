@@ -18,6 +18,7 @@ package com.galenframework.utils;
 import java.awt.Dimension;
 import java.awt.Graphics2D;
 import java.awt.Image;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
 import java.io.File;
@@ -35,6 +36,7 @@ import javax.imageio.ImageIO;
 
 import com.galenframework.browser.SeleniumGridBrowserFactory;
 import com.galenframework.page.selenium.ByChain;
+import com.galenframework.page.selenium.SeleniumPage;
 import com.galenframework.reports.TestReport;
 import com.galenframework.reports.model.LayoutReport;
 import com.galenframework.reports.nodes.LayoutReportNode;
@@ -46,7 +48,7 @@ import com.galenframework.browser.SeleniumBrowser;
 import com.galenframework.browser.SeleniumBrowserFactory;
 import com.galenframework.config.GalenConfig;
 import com.galenframework.config.GalenProperty;
-import com.galenframework.rainbow4j.Rainbow4J;
+import com.galenframework.rainbow4j.PngEncoder;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringEscapeUtils;
@@ -106,6 +108,16 @@ public class GalenUtils {
     
     
     public static File makeFullScreenshot(WebDriver driver) throws IOException, InterruptedException {
+        File file = File.createTempFile("screenshot", ".png");
+        makeFullTiledScreenshot(driver).writeTo(file, PngEncoder.DEFAULT_COMPRESSION);
+        return file;
+    }
+
+    /**
+     * Captures the whole page while scrolling it. The captured screenshots are kept encoded,
+     * so the caller decides whether the page is decoded in memory or written to a file
+     */
+    public static TiledScreenshot makeFullTiledScreenshot(WebDriver driver) throws IOException, InterruptedException {
         // scroll up first
         scrollVerticallyTo(driver, 0);
         byte[] bytes = ((TakesScreenshot)driver).getScreenshotAs(OutputType.BYTES);
@@ -123,56 +135,63 @@ public class GalenUtils {
 
         int scrollHeight = (int)longScrollHeight;
 
-        File file = File.createTempFile("screenshot", ".png");
-
         int adaptedCapturedHeight = (int)(((double)capturedHeight) / devicePixelRatio);
 
-        BufferedImage resultingImage;
-
         if (Math.abs(adaptedCapturedHeight - scrollHeight) > 40) {
             int scrollOffset = adaptedCapturedHeight;
             
             int times = scrollHeight / adaptedCapturedHeight;
             int leftover = scrollHeight % adaptedCapturedHeight;
 
-            final BufferedImage tiledImage = new BufferedImage(capturedWidth, (int)(((double)scrollHeight) * devicePixelRatio), BufferedImage.TYPE_INT_RGB);
-            Graphics2D g2dTile = tiledImage.createGraphics();
-            g2dTile.drawImage(image, 0,0, null);
+            // captured screenshots are kept encoded and are only decoded one by one when the page image is written
+            image = null;
+            TiledScreenshot tiledScreenshot = new TiledScreenshot(capturedWidth, (int)(((double)scrollHeight) * devicePixelRatio));
+            tiledScreenshot.addTile(bytes, null, 0);
 
-            
             int scroll = 0;
             for (int i = 0; i < times - 1; i++) {
                 scroll += scrollOffset;
                 scrollVerticallyTo(driver, scroll);
-                BufferedImage nextImage = ImageIO.read(new ByteArrayInputStream(((TakesScreenshot)driver).getScreenshotAs(OutputType.BYTES)));
-                g2dTile.drawImage(nextImage, 0, (i+1) * capturedHeight, null);
+                tiledScreenshot.addTile(((TakesScreenshot)driver).getScreenshotAs(OutputType.BYTES), null, (i+1) * capturedHeight);
             }
             if (leftover > 0) {
                 scroll += scrollOffset;
                 scrollVerticallyTo(driver, scroll);
-                BufferedImage nextImage = ImageIO.read(new ByteArrayInputStream(((TakesScreenshot)driver).getScreenshotAs(OutputType.BYTES)));
-                BufferedImage lastPart = nextImage.getSubimage(0, nextImage.getHeight() - (int)(((double)leftover) * devicePixelRatio), nextImage.getWidth(), leftover);
-                g2dTile.drawImage(lastPart, 0, times * capturedHeight, null);
+                // the last screenshot overlaps with the previous one, so only its bottom part is taken
+                tiledScreenshot.addTile(((TakesScreenshot)driver).getScreenshotAs(OutputType.BYTES),
+                        new Rectangle(0, capturedHeight - (int)(((double)leftover) * devicePixelRatio), capturedWidth, leftover),
+                        times * capturedHeight);
             }
             
             scrollVerticallyTo(driver, 0);
 
-            resultingImage = tiledImage;
+            if (GalenConfig.getConfig().shouldAutoresizeScreenshots()) {
+                try {
+                    double pixelRatio = estimateScreenshotPixelRatio(driver, tiledScreenshot.getWidth());
+                    if (pixelRatio > 1.0) {
+                        tiledScreenshot.scaleDown(pixelRatio);
+                    }
+                } catch (Exception ex) {
+                    LOG.trace("Couldn't resize screenshot", ex);
+                }
+            }
+
+            return tiledScreenshot;
         }
         else {
-            resultingImage = image;
-        }
-
-        if (GalenConfig.getConfig().shouldAutoresizeScreenshots()) {
-            try {
-                resultingImage = GalenUtils.resizeScreenshotIfNeeded(driver, resultingImage);
-            } catch (Exception ex) {
-                LOG.trace("Couldn't resize screenshot", ex);
+            TiledScreenshot screenshot = TiledScreenshot.singleCapture(bytes, image);
+            if (GalenConfig.getConfig().shouldAutoresizeScreenshots()) {
+                try {
+                    double pixelRatio = estimateScreenshotPixelRatio(driver, image.getWidth());
+                    if (pixelRatio > 1.0) {
+                        screenshot.scaleDown(pixelRatio);
+                    }
+                } catch (Exception ex) {
+                    LOG.trace("Couldn't resize screenshot", ex);
+                }
             }
+            return screenshot;
         }
-
-        ImageIO.write(resultingImage, "png", file);
-        return file;
     }
 
 
@@ -183,6 +202,30 @@ public class GalenUtils {
      * @return
      */
     public static BufferedImage resizeScreenshotIfNeeded(WebDriver driver, BufferedImage screenshotImage) {
+        double estimatedPixelRatio = estimateScreenshotPixelRatio(driver, screenshotImage.getWidth());
+
+        if (estimatedPixelRatio > 1.0) {
+
+            int newWidth = (int) (screenshotImage.getWidth() / estimatedPixelRatio);
+            int newHeight = (int) (screenshotImage.getHeight() / estimatedPixelRatio);
+
+            Image tmp = screenshotImage.getScaledInstance(newWidth, newHeight, Image.SCALE_SMOOTH);
+            BufferedImage scaledImage = new BufferedImage(newWidth, newHeight, BufferedImage.TYPE_INT_RGB);
+
+            Graphics2D g2d = scaledImage.createGraphics();
+            g2d.drawImage(tmp, 0, 0, null);
+            g2d.dispose();
+
+            return scaledImage;
+        }
+        else return screenshotImage;
+    }
+
+    /**
+     * @return ratio between the width of the screenshot and the width of the page
+     * in case the device pixel ratio is bigger than 1.0, otherwise 1.0
+     */
+    private static double estimateScreenshotPixelRatio(WebDriver driver, int screenshotWidth) {
         Double devicePixelRatio = 1.0;
 
         try {
@@ -191,36 +234,21 @@ public class GalenUtils {
             ex.printStackTrace();
         }
 
-        if (devicePixelRatio > 1.0 && screenshotImage.getWidth() > 0) {
+        if (devicePixelRatio > 1.0 && screenshotWidth > 0) {
             Long screenSize = ((Number) ((JavascriptExecutor) driver).executeScript("return Math.max(" +
                             "document.body.scrollWidth, document.documentElement.scrollWidth," +
                             "document.body.offsetWidth, document.documentElement.offsetWidth," +
                             "document.body.clientWidth, document.documentElement.clientWidth);"
             )).longValue();
 
-            Double estimatedPixelRatio = ((double)screenshotImage.getWidth()) / ((double)screenSize);
-
-            if (estimatedPixelRatio > 1.0) {
-
-                int newWidth = (int) (screenshotImage.getWidth() / estimatedPixelRatio);
-                int newHeight = (int) (screenshotImage.getHeight() / estimatedPixelRatio);
-
-                Image tmp = screenshotImage.getScaledInstance(newWidth, newHeight, Image.SCALE_SMOOTH);
-                BufferedImage scaledImage = new BufferedImage(newWidth, newHeight, BufferedImage.TYPE_INT_RGB);
-
-                Graphics2D g2d = scaledImage.createGraphics();
-                g2d.drawImage(tmp, 0, 0, null);
-                g2d.dispose();
-
-                return scaledImage;
-            }
-            else return screenshotImage;
+            return ((double) screenshotWidth) / ((double) screenSize);
         }
-        else return screenshotImage;
+        return 1.0;
     }
 
     public static void scrollVerticallyTo(WebDriver driver, int scroll) {
         ((JavascriptExecutor)driver).executeScript("window.scrollTo(0, " + scroll + ");");
+        SeleniumPage.invalidatePages(driver);
         try {
             waitUntilItIsScrolledToPosition(driver, scroll);
         } catch (InterruptedException e) {
@@ -307,21 +335,34 @@ public class GalenUtils {
         } else {
             driver.manage().window().setSize(new org.openqa.selenium.Dimension(width, height));
         }
+        SeleniumPage.invalidatePages(driver);
     }
 
     public static File takeScreenshot(WebDriver driver) throws IOException {
-        File file = ((TakesScreenshot)driver).getScreenshotAs(OutputType.FILE);
+        File file = File.createTempFile("screenshot", ".png");
+        takeTiledScreenshot(driver).writeTo(file, PngEncoder.DEFAULT_COMPRESSION);
+        return file;
+    }
 
+    /**
+     * Captures the visible part of the page. The captured screenshot is kept encoded,
+     * so the caller decides whether it is decoded in memory or written to a file
+     */
+    public static TiledScreenshot takeTiledScreenshot(WebDriver driver) throws IOException {
+        byte[] bytes = ((TakesScreenshot)driver).getScreenshotAs(OutputType.BYTES);
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(bytes));
+        if (image == null) {
+            throw new IOException("Unsupported screenshot format");
+        }
 
+        TiledScreenshot screenshot = TiledScreenshot.singleCapture(bytes, image);
         if (GalenConfig.getConfig().shouldAutoresizeScreenshots()) {
-            BufferedImage image = Rainbow4J.loadImage(file.getAbsolutePath());
-            File newFile = File.createTempFile("screenshot", ".png");
-            image = GalenUtils.resizeScreenshotIfNeeded(driver, image);
-
-            Rainbow4J.saveImage(image, newFile);
-            return newFile;
+            double pixelRatio = estimateScreenshotPixelRatio(driver, image.getWidth());
+            if (pixelRatio > 1.0) {
+                screenshot.scaleDown(pixelRatio);
+            }
         }
-        else return file;
+        return screenshot;
     }
     
     public static Properties loadProperties(String fileName) throws IOException {
@@ -0,0 +1,395 @@
+/*******************************************************************************
+* Copyright 2016 Ivan Shubin http://galenframework.com
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*   http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+******************************************************************************/
+package com.galenframework.utils;
+
+import com.galenframework.rainbow4j.ImageHandler;
+import com.galenframework.rainbow4j.PngEncoder;
+import org.apache.commons.io.FileUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.AreaAveragingScaleFilter;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.ImageConsumer;
+import java.awt.image.ImageFilter;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Hashtable;
+import java.util.List;
+
+/**
+ * Page screenshot which is made of the screenshots taken while scrolling the page, or of a single screenshot.
+ * The screenshots are kept encoded as they were returned by the browser and are only decoded one at a time
+ * while the stitched image is written to a file, so that the whole page is never held in memory.
+ * Pixels which are not covered by any of the screenshots are black.
+ * When the screenshot is scaled down, the stitched rows are streamed through the same area averaging filter
+ * which is used by {@link Image#getScaledInstance} with {@link Image#SCALE_SMOOTH}, so the result is exactly
+ * the same as if the whole stitched image was scaled at once.
+ */
+public class TiledScreenshot {
+
+    private static final int BLACK = 0xff000000;
+
+    private final int width;
+    private final int height;
+    private final List<Tile> tiles = new ArrayList<>();
+    private double ratio = 1.0;
+    private SoftReference<BufferedImage> decodedImage;
+
+    public TiledScreenshot(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Creates a screenshot of a single capture which was already decoded, e.g. to find out its size,
+     * so that it doesn't have to be decoded again
+     * @param encodedImage screenshot as it was returned by the browser
+     * @param decodedImage the same screenshot decoded
+     */
+    public static TiledScreenshot singleCapture(byte[] encodedImage, BufferedImage decodedImage) {
+        TiledScreenshot screenshot = new TiledScreenshot(decodedImage.getWidth(), decodedImage.getHeight());
+        screenshot.tiles.add(new Tile(encodedImage, decodedImage, null, 0));
+        return screenshot;
+    }
+
+    /**
+     * @param encodedImage screenshot as it was returned by the browser
+     * @param sourceArea area of the screenshot which is placed on the page, null for the whole screenshot
+     * @param top position of the area on the page
+     */
+    public void addTile(byte[] encodedImage, Rectangle sourceArea, int top) {
+        tiles.add(new Tile(encodedImage, null, sourceArea, top));
+    }
+
+    /**
+     * Makes the stitched image smaller by the given ratio, e.g. to convert a retina screenshot to page pixels
+     */
+    public void scaleDown(double ratio) {
+        this.ratio = ratio;
+    }
+
+    public int getWidth() {
+        return scaled(width);
+    }
+
+    public int getHeight() {
+        return scaled(height);
+    }
+
+    /**
+     * Writes the stitched image as png. A single screenshot which is placed on the page as it is
+     * gets written in the same encoding as it was returned by the browser
+     */
+    public void writeTo(File file, int compressionLevel) throws IOException {
+        if (isUnchangedCapture()) {
+            FileUtils.writeByteArrayToFile(file, tiles.get(0).encodedImage);
+        } else {
+            // in case the stitched image was already decoded for validation it is written as it is
+            BufferedImage image = decodedImage != null ? decodedImage.get() : null;
+            PngEncoder.RowSource rowSource = image != null ? new ImageRowSource(image) : createRowSource();
+            new PngEncoder(compressionLevel).write(getWidth(), getHeight(), rowSource, file);
+        }
+    }
+
+    /**
+     * Decodes the stitched image straight into the RGBA layout of {@link ImageHandler}.
+     * The same image is returned for as long as it is kept by the caller, so it should not be modified
+     */
+    public BufferedImage toImage() throws IOException {
+        BufferedImage image = decodedImage != null ? decodedImage.get() : null;
+        if (image == null) {
+            image = decodeImage();
+            decodedImage = new SoftReference<>(image);
+        }
+        return image;
+    }
+
+    /**
+     * Decodes only the given area of the stitched image into the RGBA layout of {@link ImageHandler}.
+     * Only the tiles which intersect with the area are decoded, unless the whole image is already decoded,
+     * in which case the area is copied out of it. The returned image is not shared and can be modified
+     * @param area area of the scaled image, the part of it which is outside of the image is left out
+     */
+    public BufferedImage readArea(Rectangle area) throws IOException {
+        Rectangle region = area.intersection(new Rectangle(0, 0, getWidth(), getHeight()));
+        if (region.isEmpty()) {
+            throw new IllegalArgumentException(String.format("Area {x: %d, y: %d, w: %d, h: %d} is outside of the screenshot {w: %d, h: %d}",
+                    area.x, area.y, area.width, area.height, getWidth(), getHeight()));
+        }
+
+        BufferedImage image = decodedImage != null ? decodedImage.get() : null;
+        if (image == null && isUnchangedCapture()) {
+            image = tiles.get(0).decodedImage;
+        }
+        if (image != null) {
+            return ImageHandler.copyToRgbaImage(image.getSubimage(region.x, region.y, region.width, region.height));
+        }
+
+        PngEncoder.RowSource rowSource = ratio == 1.0 ? new TileRowSource() : new ScaledRowSource(sourceRowAbove(region.y));
+        return readRows(rowSource, region);
+    }
+
+    private BufferedImage decodeImage() throws IOException {
+        if (isUnchangedCapture()) {
+            return ImageHandler.copyToRgbaImage(tiles.get(0).decode());
+        }
+        return readRows(createRowSource(), new Rectangle(0, 0, getWidth(), getHeight()));
+    }
+
+    /**
+     * Copies the given area out of the rows of the whole image width. The rows above the area are still read
+     * from the scaled source, as the scale filter only takes them from the top
+     */
+    private BufferedImage readRows(PngEncoder.RowSource rowSource, Rectangle area) throws IOException {
+        BufferedImage image = ImageHandler.createRgbaImage(area.width, area.height);
+        byte[] bytes = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+
+        int firstRow = rowSource instanceof ScaledRowSource ? 0 : area.y;
+        int[] row = new int[getWidth()];
+        for (int y = firstRow, k = 0; y < area.y + area.height; y++) {
+            rowSource.readRow(y, row);
+            if (y < area.y) {
+                continue;
+            }
+            for (int x = area.x; x < area.x + area.width; x++, k += ImageHandler.BLOCK_SIZE) {
+                bytes[k] = (byte) (row[x] >> 16);
+                bytes[k + 1] = (byte) (row[x] >> 8);
+                bytes[k + 2] = (byte) row[x];
+                bytes[k + 3] = (byte) (row[x] >>> 24);
+            }
+        }
+        return image;
+    }
+
+    /**
+     * @return the first row of the stitched image which is needed for the given scaled row, with one extra row
+     * in case the scaled row starts in the middle of a stitched one
+     */
+    private int sourceRowAbove(int scaledRow) {
+        return Math.max(0, (int) Math.floor(scaledRow * ratio) - 1);
+    }
+
+    private boolean isUnchangedCapture() {
+        if (tiles.size() == 1 && ratio == 1.0) {
+            Tile tile = tiles.get(0);
+            return tile.decodedImage != null && tile.sourceArea == null && tile.top == 0
+                    && tile.decodedImage.getWidth() == width && tile.decodedImage.getHeight() == height;
+        }
+        return false;
+    }
+
+    private int scaled(int value) {
+        return (int) (value / ratio);
+    }
+
+    private PngEncoder.RowSource createRowSource() {
+        return ratio == 1.0 ? new TileRowSource() : new ScaledRowSource(0);
+    }
+
+    /**
+     * Decodes the tile and crops it the same way as it would have been drawn on a single page image
+     */
+    private BufferedImage decodeTile(Tile tile) throws IOException {
+        BufferedImage image = tile.decode();
+        if (tile.sourceArea != null) {
+            Rectangle area = tile.sourceArea.intersection(new Rectangle(0, 0, image.getWidth(), image.getHeight()));
+            image = image.getSubimage(area.x, area.y, area.width, area.height);
+        }
+
+        int tileWidth = Math.min(image.getWidth(), width);
+        int tileHeight = Math.min(image.getHeight(), height - tile.top);
+        return image.getSubimage(0, 0, tileWidth, tileHeight);
+    }
+
+    private static class Tile {
+        private final byte[] encodedImage;
+        private final BufferedImage decodedImage;
+        private final Rectangle sourceArea;
+        private final int top;
+
+        private Tile(byte[] encodedImage, BufferedImage decodedImage, Rectangle sourceArea, int top) {
+            this.encodedImage = encodedImage;
+            this.decodedImage = decodedImage;
+            this.sourceArea = sourceArea;
+            this.top = top;
+        }
+
+        BufferedImage decode() throws IOException {
+            if (decodedImage != null) {
+                return decodedImage;
+            }
+            BufferedImage image = ImageIO.read(new ByteArrayInputStream(encodedImage));
+            if (image == null) {
+                throw new IOException("Unsupported screenshot format");
+            }
+            return image;
+        }
+    }
+
+    /**
+     * Goes through the rows of the stitched image in its original size from top to bottom
+     * keeping only the tile of the current row decoded
+     */
+    private class TileRowSource implements PngEncoder.RowSource {
+        private Tile currentTile;
+        private BufferedImage currentImage;
+
+        @Override
+        public void readRow(int y, int[] row) throws IOException {
+            Tile tile = findTile(y);
+            if (tile != currentTile) {
+                currentTile = tile;
+                currentImage = tile != null ? decodeTile(tile) : null;
+            }
+
+            int filled = 0;
+            if (currentImage != null && y - tile.top < currentImage.getHeight()) {
+                filled = Math.min(row.length, currentImage.getWidth());
+                currentImage.getRGB(0, y - tile.top, filled, 1, row, 0, filled);
+                for (int x = 0; x < filled; x++) {
+                    row[x] |= BLACK;
+                }
+            }
+            for (int x = filled; x < row.length; x++) {
+                row[x] = BLACK;
+            }
+        }
+
+        /**
+         * @return the last added tile which starts at or above the given row, as later tiles are drawn over the earlier ones
+         */
+        private Tile findTile(int y) {
+            Tile found = null;
+            for (Tile tile : tiles) {
+                if (tile.top <= y && (found == null || tile.top >= found.top)) {
+                    found = tile;
+                }
+            }
+            return found;
+        }
+    }
+
+    /**
+     * Reads the rows of the already decoded stitched image
+     */
+    private static class ImageRowSource implements PngEncoder.RowSource {
+        private final byte[] bytes;
+        private final int imageWidth;
+
+        ImageRowSource(BufferedImage image) {
+            this.bytes = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+            this.imageWidth = image.getWidth();
+        }
+
+        @Override
+        public void readRow(int y, int[] row) {
+            for (int x = 0, k = y * imageWidth * ImageHandler.BLOCK_SIZE; x < row.length; x++, k += ImageHandler.BLOCK_SIZE) {
+                row[x] = (bytes[k + 3] & 0xff) << 24 | (bytes[k] & 0xff) << 16 | (bytes[k + 1] & 0xff) << 8 | (bytes[k + 2] & 0xff);
+            }
+        }
+    }
+
+    /**
+     * Reads the stitched rows one by one into {@link AreaAveragingScaleFilter}, which gives out
+     * each scaled row as soon as all the rows it is made of were read.
+     * The rows above the first needed one are given to the filter as black without decoding any tiles for them
+     */
+    private class ScaledRowSource implements PngEncoder.RowSource, ImageConsumer {
+        private final TileRowSource source = new TileRowSource();
+        private final ImageFilter filter;
+        private final Deque<int[]> scaledRows = new ArrayDeque<>();
+        private final int[] sourceRow = new int[width];
+        private final int firstSourceY;
+        private int nextSourceY = 0;
+
+        ScaledRowSource(int firstSourceY) {
+            this.firstSourceY = firstSourceY;
+            filter = new AreaAveragingScaleFilter(getWidth(), getHeight()).getFilterInstance(this);
+            filter.setDimensions(width, height);
+            filter.setColorModel(ColorModel.getRGBdefault());
+            filter.setHints(TOPDOWNLEFTRIGHT | COMPLETESCANLINES | SINGLEPASS | SINGLEFRAME);
+        }
+
+        @Override
+        public void readRow(int y, int[] row) throws IOException {
+            while (scaledRows.isEmpty() && nextSourceY < height) {
+                if (nextSourceY < firstSourceY) {
+                    Arrays.fill(sourceRow, BLACK);
+                } else {
+                    source.readRow(nextSourceY, sourceRow);
+                }
+                filter.setPixels(0, nextSourceY, width, 1, ColorModel.getRGBdefault(), sourceRow, 0, width);
+                nextSourceY++;
+            }
+
+            int[] scaledRow = scaledRows.poll();
+            for (int x = 0; x < row.length; x++) {
+                row[x] = scaledRow != null && x < scaledRow.length ? scaledRow[x] | BLACK : BLACK;
+            }
+        }
+
+        @Override
+        public void setPixels(int x, int y, int w, int h, ColorModel model, int[] pixels, int off, int scansize) {
+            for (int r = 0; r < h; r++) {
+                int[] scaledRow = new int[w];
+                for (int i = 0; i < w; i++) {
+                    scaledRow[i] = model.getRGB(pixels[off + r * scansize + i]);
+                }
+                scaledRows.add(scaledRow);
+            }
+        }
+
+        @Override
+        public void setPixels(int x, int y, int w, int h, ColorModel model, byte[] pixels, int off, int scansize) {
+            for (int r = 0; r < h; r++) {
+                int[] scaledRow = new int[w];
+                for (int i = 0; i < w; i++) {
+                    scaledRow[i] = model.getRGB(pixels[off + r * scansize + i] & 0xff);
+                }
+                scaledRows.add(scaledRow);
+            }
+        }
+
+        @Override
+        public void setDimensions(int width, int height) {
+        }
+
+        @Override
+        public void setProperties(Hashtable<?, ?> props) {
+        }
+
+        @Override
+        public void setColorModel(ColorModel model) {
+        }
+
+        @Override
+        public void setHints(int hintflags) {
+        }
+
+        @Override
+        public void imageComplete(int status) {
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*******************************************************************************
+* Copyright 2016 Ivan Shubin http://galenframework.com
+* 
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* 
+*   http://www.apache.org/licenses/LICENSE-2.0
+* 
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+******************************************************************************/
+package com.galenframework.validation;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * Hash of the exact pixels of an image area. Areas with different hashes are never the same,
+ * areas with the same hash still have to be compared with {@link #samePixels} to be sure.
+ */
+public final class ImageHash {
+
+    private ImageHash() {
+    }
+
+    public static long contentHash(BufferedImage image, Rectangle area) {
+        int[] row = new int[area.width];
+        long hash = 1125899906842597L;
+        for (int y = area.y; y < area.y + area.height; y++) {
+            image.getRGB(area.x, y, area.width, 1, row, 0, area.width);
+            for (int rgb : row) {
+                hash = 31 * hash + rgb;
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * @return true if both areas have the same size and exactly the same pixels
+     */
+    public static boolean samePixels(BufferedImage imageA, Rectangle areaA, BufferedImage imageB, Rectangle areaB) {
+        if (areaA.width != areaB.width || areaA.height != areaB.height) {
+            return false;
+        }
+        int[] rowA = new int[areaA.width];
+        int[] rowB = new int[areaB.width];
+        for (int y = 0; y < areaA.height; y++) {
+            imageA.getRGB(areaA.x, areaA.y + y, areaA.width, 1, rowA, 0, areaA.width);
+            imageB.getRGB(areaB.x, areaB.y + y, areaB.width, 1, rowB, 0, areaB.width);
+            if (!Arrays.equals(rowA, rowB)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,150 @@
+/*******************************************************************************
+* Copyright 2016 Ivan Shubin http://galenframework.com
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*   http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+******************************************************************************/
+package com.galenframework.validation;
+
+import com.galenframework.page.Page;
+import com.galenframework.specs.*;
+import com.galenframework.specs.page.Locator;
+import com.galenframework.specs.page.ObjectSpecs;
+import com.galenframework.specs.page.PageSection;
+import com.galenframework.specs.page.PageSpec;
+import com.galenframework.specs.page.SpecGroup;
+
+import java.util.*;
+
+/**
+ * Goes through all sections of a page spec before they are validated and collects every object which is going to be
+ * looked up on the page, both the validated objects and the ones mentioned in spec arguments (e.g. "near button" or
+ * "width 50% of container/width"). The page gets all of them at once, so that it could fetch them in a single call
+ * instead of making a separate driver call for each of them while specs are evaluated.
+ * The included and excluded tags are applied by {@link com.galenframework.speclang2.pagespec.PageSpecReader} to the "@on" blocks,
+ * so the sections of the page spec are only the ones which match the section filter, the same ones that get validated.
+ */
+public class PageObjectsPrefetch {
+
+    private final PageSpec pageSpec;
+    private final Set<String> objectNames = new LinkedHashSet<>();
+
+    public PageObjectsPrefetch(PageSpec pageSpec) {
+        this.pageSpec = pageSpec;
+    }
+
+    public void prefetch(Page page) {
+        List<Locator> locators = new LinkedList<>();
+        for (String objectName : collectObjectNames()) {
+            Locator locator = pageSpec.getObjectLocator(objectName);
+            if (locator != null) {
+                locators.add(locator);
+            }
+        }
+        page.preloadObjects(locators);
+    }
+
+    /**
+     * @return names of all objects defined in the page spec which are referenced by its sections
+     */
+    public Set<String> collectObjectNames() {
+        objectNames.clear();
+        if (pageSpec.getSections() != null) {
+            for (PageSection section : pageSpec.getSections()) {
+                collectFromSection(section);
+            }
+        }
+        return objectNames;
+    }
+
+    private void collectFromSection(PageSection section) {
+        if (section.getSections() != null) {
+            for (PageSection subSection : section.getSections()) {
+                collectFromSection(subSection);
+            }
+        }
+
+        if (section.getObjects() != null) {
+            for (ObjectSpecs object : section.getObjects()) {
+                addObjects(object.getObjectName());
+                collectFromSpecs(object.getSpecs());
+
+                if (object.getSpecGroups() != null) {
+                    for (SpecGroup specGroup : object.getSpecGroups()) {
+                        collectFromSpecs(specGroup.getSpecs());
+                    }
+                }
+            }
+        }
+    }
+
+    private void collectFromSpecs(List<Spec> specs) {
+        if (specs != null) {
+            for (Spec spec : specs) {
+                collectFromSpec(spec);
+            }
+        }
+    }
+
+    private void collectFromSpec(Spec spec) {
+        if (spec instanceof SpecComplex) {
+            addObjects(((SpecComplex) spec).getObject());
+            if (((SpecComplex) spec).getLocations() != null) {
+                for (Location location : ((SpecComplex) spec).getLocations()) {
+                    addObjectsFromRange(location.getRange());
+                }
+            }
+        }
+        else if (spec instanceof SpecDirectionPosition) {
+            addObjects(((SpecDirectionPosition) spec).getObject());
+            addObjectsFromRange(((SpecDirectionPosition) spec).getRange());
+        }
+        else if (spec instanceof SpecObjectWithErrorRate) {
+            addObjects(((SpecObjectWithErrorRate) spec).getObject());
+        }
+        else if (spec instanceof SpecObjectList) {
+            if (((SpecObjectList) spec).getChildObjects() != null) {
+                for (String childObject : ((SpecObjectList) spec).getChildObjects()) {
+                    addObjects(childObject);
+                }
+            }
+        }
+        else if (spec instanceof SpecCount) {
+            addObjects(((SpecCount) spec).getPattern());
+        }
+        else if (spec instanceof SpecRange) {
+            addObjectsFromRange(((SpecRange) spec).getRange());
+        }
+    }
+
+    /**
+     * Ranges like "50% of container/width" take the value from another object
+     */
+    private void addObjectsFromRange(Range range) {
+        if (range != null && range.isPercentage()) {
+            String valuePath = range.getPercentageOfValue();
+            int slashIndex = valuePath.indexOf("/");
+            if (slashIndex > 0) {
+                addObjects(valuePath.substring(0, slashIndex));
+            }
+        }
+    }
+
+    /**
+     * @param objectExpression either a single object name or a galen object expression like "menu.item-*" or "&amp;group"
+     */
+    private void addObjects(String objectExpression) {
+        if (objectExpression != null) {
+            objectNames.addAll(pageSpec.findOnlyExistingMatchingObjectNames(objectExpression));
+        }
+    }
+}
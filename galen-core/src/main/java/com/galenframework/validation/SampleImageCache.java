@@ -0,0 +1,150 @@
+/*******************************************************************************
+* Copyright 2016 Ivan Shubin http://galenframework.com
+* 
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* 
+*   http://www.apache.org/licenses/LICENSE-2.0
+* 
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+******************************************************************************/
+package com.galenframework.validation;
+
+import com.galenframework.config.GalenConfig;
+import com.galenframework.config.GalenProperty;
+import com.galenframework.rainbow4j.ImageHandler;
+import com.galenframework.rainbow4j.Rainbow4J;
+import com.galenframework.utils.GalenUtils;
+import org.apache.commons.io.IOUtils;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps decoded sample images of image specs in memory so that every sample is only decoded once, even when
+ * it is used by many specs or is found under different paths. Samples are identified by the hash of their content,
+ * so a changed file is decoded again. Decoded samples are stored unfiltered in the RGBA layout in which
+ * they are compared without copying, because the result of filters depends on the compared area.
+ * The least recently used samples are dropped once the cache exceeds the size configured
+ * with "galen.spec.image.cache.size" (in megabytes).
+ */
+public class SampleImageCache {
+
+    private static final SampleImageCache instance = new SampleImageCache();
+
+    private final LinkedHashMap<String, SampleImage> samples = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedBytes = 0;
+
+    public static SampleImageCache getInstance() {
+        return instance;
+    }
+
+    public SampleImage load(String imagePath) throws IOException {
+        byte[] content;
+        try (InputStream stream = GalenUtils.findFileOrResourceAsStream(imagePath)) {
+            if (stream == null) {
+                throw new FileNotFoundException(imagePath);
+            }
+            content = IOUtils.toByteArray(stream);
+        }
+
+        String key = contentHash(content);
+        SampleImage sample = get(key);
+        if (sample == null) {
+            // decoding is done outside of the lock, so at worst the same sample is decoded twice
+            sample = new SampleImage(toRgbaImage(Rainbow4J.loadImage(new ByteArrayInputStream(content))));
+            put(key, sample);
+        }
+        return sample;
+    }
+
+    public synchronized void clear() {
+        samples.clear();
+        cachedBytes = 0;
+    }
+
+    public synchronized int size() {
+        return samples.size();
+    }
+
+    private synchronized SampleImage get(String key) {
+        return samples.get(key);
+    }
+
+    private synchronized void put(String key, SampleImage sample) {
+        long maxBytes = GalenConfig.getConfig().getIntProperty(GalenProperty.SPEC_IMAGE_CACHE_SIZE, 0, Integer.MAX_VALUE) * 1024L * 1024L;
+        if (sample.getSizeInBytes() > maxBytes || samples.containsKey(key)) {
+            return;
+        }
+
+        samples.put(key, sample);
+        cachedBytes += sample.getSizeInBytes();
+
+        Iterator<SampleImage> it = samples.values().iterator();
+        while (cachedBytes > maxBytes && it.hasNext()) {
+            cachedBytes -= it.next().getSizeInBytes();
+            it.remove();
+        }
+    }
+
+    private static BufferedImage toRgbaImage(BufferedImage image) throws IOException {
+        if (image == null) {
+            throw new IOException("Unsupported image format");
+        }
+        return ImageHandler.copyToRgbaImage(image);
+    }
+
+    private static String contentHash(byte[] content) {
+        try {
+            StringBuilder hex = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-1").digest(content)) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static class SampleImage {
+        private final BufferedImage image;
+        private final Map<Rectangle, Long> hashes = new HashMap<>();
+
+        SampleImage(BufferedImage image) {
+            this.image = image;
+        }
+
+        /**
+         * The image is shared between all specs, so it should never be modified
+         */
+        public BufferedImage getImage() {
+            return image;
+        }
+
+        /**
+         * @return hash of the pixels in the given area of the sample, see {@link ImageHash#contentHash(BufferedImage, Rectangle)}
+         */
+        public synchronized long getContentHash(Rectangle area) {
+            return hashes.computeIfAbsent(area, a -> ImageHash.contentHash(image, a));
+        }
+
+        long getSizeInBytes() {
+            return ((long) image.getWidth()) * image.getHeight() * ImageHandler.BLOCK_SIZE;
+        }
+    }
+}
@@ -16,6 +16,7 @@
 package com.galenframework.validation.specs;
 
 import java.awt.Color;
+import java.awt.Dimension;
 import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.util.LinkedList;
@@ -24,6 +25,7 @@ import java.util.stream.Collectors;
 
 import com.galenframework.config.GalenConfig;
 import com.galenframework.config.GalenProperty;
+import com.galenframework.page.Page;
 import com.galenframework.page.Rect;
 import com.galenframework.rainbow4j.colorscheme.ColorClassifier;
 import com.galenframework.rainbow4j.colorscheme.CustomSpectrum;
@@ -47,10 +49,11 @@ public class SpecValidationColorScheme extends SpecValidation<SpecColorScheme> {
         checkAvailability(mainObject, objectName);
 
         
-        BufferedImage pageImage = pageValidation.getPage().getScreenshotImage();
+        Page page = pageValidation.getPage();
+        Dimension screenshotSize = page.getScreenshotSize();
         
         Rect area = mainObject.getArea();
-        if (pageImage.getWidth() < area.getLeft() + area.getWidth() || pageImage.getHeight() < area.getTop() + area.getHeight()) {
+        if (screenshotSize.width < area.getLeft() + area.getWidth() || screenshotSize.height < area.getTop() + area.getHeight()) {
             throw new ValidationErrorException()
                 .withValidationObject(new ValidationObject(area, objectName))
                 .withMessage("Can't fetch image for \"object\" as it is outside of screenshot");
@@ -62,11 +65,7 @@ public class SpecValidationColorScheme extends SpecValidation<SpecColorScheme> {
 
         CustomSpectrum spectrum;
         try {
-            spectrum = Rainbow4J.readCustomSpectrum(
-                    pageImage, classifiers,
-                    new Rectangle(area.getLeft(), area.getTop(), area.getWidth(), area.getHeight()),
-                    colorTolerance
-            );
+            spectrum = readSpectrum(page, area, classifiers, colorTolerance);
         } catch (Exception e) {
             throw new ValidationErrorException(String.format("Couldn't fetch spectrum for \"%s\"", objectName));
         }
@@ -102,5 +101,18 @@ public class SpecValidationColorScheme extends SpecValidation<SpecColorScheme> {
         return new ValidationResult(spec, objects);
     }
 
+    /**
+     * Reads only the element area of the screenshot. Empty areas or the ones which start outside of the screenshot
+     * can't be cut out of it, so they are left to the spectrum reader
+     */
+    private CustomSpectrum readSpectrum(Page page, Rect area, List<ColorClassifier> classifiers, int colorTolerance) {
+        if (area.getWidth() > 0 && area.getHeight() > 0 && area.getLeft() >= 0 && area.getTop() >= 0) {
+            BufferedImage areaImage = page.getScreenshotImage(area);
+            return Rainbow4J.readCustomSpectrum(areaImage, classifiers,
+                    new Rectangle(0, 0, areaImage.getWidth(), areaImage.getHeight()), colorTolerance);
+        }
+        return Rainbow4J.readCustomSpectrum(page.getScreenshotImage(), classifiers, area.toAwtRectangle(), colorTolerance);
+    }
+
 
 }
@@ -134,6 +134,8 @@ public class SpecValidationComponent extends SpecValidation<SpecComponent> {
             throw new RuntimeException("Could not read spec " + spec.getSpecPath(), e);
         }
 
+        new PageObjectsPrefetch(componentPageSpec).prefetch(page);
+
         SectionValidation sectionValidation = new SectionValidation(componentPageSpec.getSections(),
                 new PageValidation(browser, page, componentPageSpec, validationListener, sectionFilter),
                 validationListener);
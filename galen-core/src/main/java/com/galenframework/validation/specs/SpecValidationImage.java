@@ -15,14 +15,22 @@
 ******************************************************************************/
 package com.galenframework.validation.specs;
 
+import java.awt.Dimension;
 import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
-import java.io.InputStream;
 import java.text.DecimalFormat;
-import java.util.Iterator;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
-
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.galenframework.page.Page;
 import com.galenframework.page.Rect;
 import com.galenframework.specs.SpecImage;
 import com.galenframework.validation.*;
@@ -31,7 +39,10 @@ import com.galenframework.page.PageElement;
 import com.galenframework.utils.GalenUtils;
 import com.galenframework.rainbow4j.ComparisonOptions;
 import com.galenframework.rainbow4j.ImageCompareResult;
+import com.galenframework.rainbow4j.ComparisonPool;
+import com.galenframework.rainbow4j.ImageHandler;
 import com.galenframework.rainbow4j.Rainbow4J;
+import com.galenframework.rainbow4j.filters.FilterPipeline;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -59,12 +70,58 @@ public class SpecValidationImage extends SpecValidation<SpecImage> {
         }
     }
 
+    private static class PageArea {
+        private final BufferedImage image;
+        private final Rectangle area;
+        private final ComparisonOptions options;
+        private final ImageHandler handler;
+        private Long contentHash;
+
+        public PageArea(BufferedImage image, Rectangle area, ComparisonOptions options) {
+            this(image, area, options, null);
+        }
+
+        /**
+         * @param handler handler which owns the pixels of the image, it is released once all samples are checked
+         */
+        public PageArea(BufferedImage image, Rectangle area, ComparisonOptions options, ImageHandler handler) {
+            this.image = image;
+            this.area = area;
+            this.options = options;
+            this.handler = handler;
+        }
+
+        public void release() {
+            if (handler != null) {
+                handler.release();
+            }
+        }
+
+        public synchronized long getContentHash() {
+            if (contentHash == null) {
+                contentHash = ImageHash.contentHash(image, area);
+            }
+            return contentHash;
+        }
+    }
+
+    private static class Sample {
+        private final String path;
+        private final SampleImageCache.SampleImage image;
+
+        public Sample(String path, SampleImageCache.SampleImage image) {
+            this.path = path;
+            this.image = image;
+        }
+    }
+
     @Override
     public ValidationResult check(PageValidation pageValidation, String objectName, SpecImage spec) throws ValidationErrorException {
         PageElement pageElement = pageValidation.findPageElement(objectName);
         checkAvailability(pageElement, objectName);
 
-        final BufferedImage pageImage = pageValidation.getPage().getScreenshotImage();
+        final Page page = pageValidation.getPage();
+        final Dimension screenshotSize = page.getScreenshotSize();
 
         int tolerance = GalenConfig.getConfig().getImageSpecDefaultTolerance();
 
@@ -81,6 +138,7 @@ public class SpecValidationImage extends SpecValidation<SpecImage> {
         options.setMapFilters(spec.getMapFilters());
         options.setTolerance(tolerance);
         options.setAnalyzeOffset(spec.getAnalyzeOffset());
+        options.setParallelism(GalenConfig.getConfig().getImageSpecComparisonThreads());
 
         Rect elementArea = pageElement.getArea();
 
@@ -101,16 +159,45 @@ public class SpecValidationImage extends SpecValidation<SpecImage> {
 
         ImageCheck minCheck = new ImageCheck(realPaths.get(0), largestPossibleDifference, NO_RESULT, NO_ERROR_MESSAGE);
 
-        Iterator<String> it = realPaths.iterator();
+        List<ValidationObject> objects = asList(new ValidationObject(pageElement.getArea(), objectName));
+
+        if (minCheck.difference <= 0) {
+            // there are no pixels to compare
+            return new ValidationResult(spec, objects);
+        }
 
         try {
-            while (minCheck.difference > 0 && it.hasNext()) {
-                String imagePath = it.next();
+            // the first sample is loaded before the element area is checked, so that the errors are reported in the same order as before
+            Sample firstSample = loadSample(spec, realPaths.get(0));
 
-                ImageCheck imageCheck = checkImages(spec, pageImage, options, elementArea, imagePath);
-                if (imageCheck.difference <= minCheck.difference) {
-                    minCheck = imageCheck;
+            if (elementArea.getLeft() >= screenshotSize.width || elementArea.getTop() >= screenshotSize.height) {
+                throw new RuntimeException(String.format(
+                        "The page element is located outside of the screenshot. (Element {x: %d, y: %d, w: %d, h: %d}, Screenshot {w: %d, h: %d})", elementArea.getLeft(),
+                        elementArea.getTop(), elementArea.getWidth(), elementArea.getHeight(), screenshotSize.width, screenshotSize.height));
+            }
+
+            if (spec.isCropIfOutside() || isOnlyOnePixelOutsideScreenshot(elementArea, screenshotSize)) {
+                elementArea = cropElementAreaIfOutside(elementArea, screenshotSize.width, screenshotSize.height);
+            }
+
+            SpecImage.ErrorRate errorRate = spec.getErrorRate();
+            if (errorRate == null) {
+                errorRate = GalenConfig.getConfig().getImageSpecDefaultErrorRate();
+            }
+            options.setMismatchBudget(calculateMismatchBudget(errorRate, elementArea));
+
+            int threads = options.getParallelism();
+            PageArea pageArea = preparePageArea(page, screenshotSize, toRectangle(elementArea), options);
+            try {
+                if (realPaths.size() > 1 && threads > 1) {
+                    pageArea.options.setParallelism(Math.max(1, threads / Math.min(threads, realPaths.size())));
+                    minCheck = checkImagesConcurrently(spec, pageArea, errorRate, realPaths, firstSample, minCheck, threads);
+                } else {
+                    minCheck = checkImagesSequentially(spec, pageArea, errorRate, realPaths, firstSample, minCheck);
                 }
+            } finally {
+                // results don't reference the shared area, Rainbow4J copies the filtered images for them
+                pageArea.release();
             }
         } catch (ValidationErrorException ex) {
             LOG.trace("Validation errors during image compare.", ex);
@@ -121,8 +208,6 @@ public class SpecValidationImage extends SpecValidation<SpecImage> {
             throw new ValidationErrorException(ex).withValidationObject(new ValidationObject(pageElement.getArea(), objectName));
         }
 
-        List<ValidationObject> objects = asList(new ValidationObject(pageElement.getArea(), objectName));
-
         if (minCheck.difference > 0) {
             throw new ValidationErrorException(minCheck.errorMessage)
                     .withValidationObjects(objects)
@@ -154,40 +239,182 @@ public class SpecValidationImage extends SpecValidation<SpecImage> {
     }
 
 
-    private ImageCheck checkImages(SpecImage spec, BufferedImage pageImage, ComparisonOptions options, Rect elementArea, String imagePath)
-            throws ValidationErrorException {
-        BufferedImage sampleImage;
+    private Sample loadSample(SpecImage spec, String imagePath) throws ValidationErrorException {
         try {
-            InputStream stream = GalenUtils.findFileOrResourceAsStream(imagePath);
-            sampleImage = Rainbow4J.loadImage(stream);
+            return new Sample(imagePath, SampleImageCache.getInstance().load(imagePath));
         } catch (Exception ex) {
             LOG.error("Unknown errors during image check.", ex);
             throw new ValidationErrorException("Couldn't load image: " + spec.getImagePaths().get(0));
         }
+    }
 
-        Rectangle sampleArea = spec.getSelectedArea() != null ? toRectangle(spec.getSelectedArea()) : new Rectangle(0, 0, sampleImage.getWidth(),
+    private Rectangle sampleArea(SpecImage spec, BufferedImage sampleImage) {
+        return spec.getSelectedArea() != null ? toRectangle(spec.getSelectedArea()) : new Rectangle(0, 0, sampleImage.getWidth(),
                 sampleImage.getHeight());
+    }
+
+    /**
+     * Samples are loaded one by one right before they are compared, so the search stops
+     * at the first matching sample without loading the rest of them
+     */
+    private ImageCheck checkImagesSequentially(SpecImage spec, PageArea pageArea, SpecImage.ErrorRate errorRate,
+                                               List<String> imagePaths, Sample firstSample, ImageCheck minCheck) throws ValidationErrorException {
+        for (int i = 0; minCheck.difference > 0 && i < imagePaths.size(); i++) {
+            Sample sample = i == 0 ? firstSample : loadSample(spec, imagePaths.get(i));
+            ImageCheck imageCheck = checkImages(spec, pageArea, errorRate, sample);
+            if (imageCheck.difference <= minCheck.difference) {
+                minCheck = imageCheck;
+            }
+        }
+        return minCheck;
+    }
+
+    /**
+     * Compares all samples at the same time. As soon as one of them matches the samples which come after it are skipped.
+     * The results are then taken in the order of the samples, so the same sample is picked
+     * and the same error is thrown as by {@link #checkImagesSequentially}.
+     * The samples are compared on the {@link ComparisonPool} of the configured amount of threads, which is shared
+     * by all image specs and also processes the bands of each comparison. Once the result is known
+     * the comparisons which are still running are cancelled, which stops them before their next pass over the image
+     */
+    private ImageCheck checkImagesConcurrently(SpecImage spec, PageArea pageArea, SpecImage.ErrorRate errorRate,
+                                               List<String> imagePaths, Sample firstSample, ImageCheck minCheck, int threads) throws Exception {
+        AtomicInteger firstMatch = new AtomicInteger(Integer.MAX_VALUE);
+        List<Future<ImageCheck>> futures = new ArrayList<>(imagePaths.size());
+        ForkJoinPool pool = ComparisonPool.get(threads);
+
+        try {
+            for (int i = 0; i < imagePaths.size(); i++) {
+                int index = i;
+                String imagePath = imagePaths.get(i);
+                futures.add(submit(pool, () -> {
+                    if (firstMatch.get() < index) {
+                        return null;
+                    }
+                    Sample sample = index == 0 ? firstSample : loadSample(spec, imagePath);
+                    ImageCheck imageCheck = checkImages(spec, pageArea, errorRate, sample);
+                    if (imageCheck.difference <= 0) {
+                        firstMatch.accumulateAndGet(index, Math::min);
+                    }
+                    return imageCheck;
+                }));
+            }
+
+            for (Future<ImageCheck> future : futures) {
+                ImageCheck imageCheck = future.get();
+                if (imageCheck != null && imageCheck.difference <= minCheck.difference) {
+                    minCheck = imageCheck;
+                }
+                if (minCheck.difference <= 0) {
+                    break;
+                }
+            }
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof Exception) {
+                throw (Exception) ex.getCause();
+            }
+            throw ex;
+        } finally {
+            firstMatch.set(-1);
+            pageArea.options.cancel();
+            // the shared area is released afterwards, so none of the comparisons should be still reading it
+            for (Future<ImageCheck> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException | CancellationException ex) {
+                    LOG.trace("Skipped image comparison", ex);
+                }
+            }
+        }
+        return minCheck;
+    }
+
+    /**
+     * Reads only the element area of the screenshot, once for all samples, with original filters already applied to it.
+     * The margin for offset analysis is kept around the area the same way as it is done by {@link Rainbow4J#compare}.
+     * The given options are not changed, the returned area has its own copy of them which fits the read region
+     */
+    private PageArea preparePageArea(Page page, Dimension screenshotSize, Rectangle elementArea, ComparisonOptions options) {
+        ComparisonOptions regionOptions = copyOptions(options);
+
+        Rectangle pageBounds = new Rectangle(0, 0, screenshotSize.width, screenshotSize.height);
+        if (!pageBounds.contains(elementArea)) {
+            // leaving it to the comparison to report the area which is outside of the screenshot
+            return new PageArea(page.getScreenshotImage(), elementArea, regionOptions);
+        }
+
+        // the offset search also reads one pixel beyond the analyzed offset
+        int margin = options.getAnalyzeOffset() > 0 ? options.getAnalyzeOffset() + 1 : 0;
+        Rectangle region = new Rectangle(elementArea.x - margin, elementArea.y - margin,
+                elementArea.width + 2 * margin, elementArea.height + 2 * margin).intersection(pageBounds);
+
+        ImageHandler regionHandler = new ImageHandler(page.getScreenshotImage(new Rect(region.x, region.y, region.width, region.height)));
+        Rectangle localArea = new Rectangle(elementArea.x - region.x, elementArea.y - region.y, elementArea.width, elementArea.height);
 
-        if (elementArea.getLeft() >= pageImage.getWidth() || elementArea.getTop() >= pageImage.getHeight()) {
-            throw new RuntimeException(String.format(
-                    "The page element is located outside of the screenshot. (Element {x: %d, y: %d, w: %d, h: %d}, Screenshot {w: %d, h: %d})", elementArea.getLeft(),
-                    elementArea.getTop(), elementArea.getWidth(), elementArea.getHeight(), pageImage.getWidth(), pageImage.getHeight()));
+        if (options.getOriginalFilters() != null && !options.getOriginalFilters().isEmpty()) {
+            FilterPipeline pipeline = new FilterPipeline(options.getOriginalFilters(), screenshotSize);
+            regionHandler.applyFilter(pipeline, localArea);
+            regionOptions.setOriginalFilters(new LinkedList<>());
         }
 
-        if (spec.isCropIfOutside() || isOnlyOnePixelOutsideScreenshot(elementArea, pageImage)) {
-            elementArea = cropElementAreaIfOutside(elementArea, pageImage.getWidth(), pageImage.getHeight());
+        if (options.getIgnoreRegions() != null) {
+            List<Rectangle> localIgnoreRegions = new LinkedList<>();
+            for (Rectangle ignoreRegion : options.getIgnoreRegions()) {
+                localIgnoreRegions.add(new Rectangle(ignoreRegion.x - region.x, ignoreRegion.y - region.y, ignoreRegion.width, ignoreRegion.height));
+            }
+            regionOptions.setIgnoreRegions(localIgnoreRegions);
         }
 
-        ImageCompareResult result = Rainbow4J.compare(pageImage, sampleImage, toRectangle(elementArea), sampleArea, options);
+        return new PageArea(regionHandler.getImage(), localArea, regionOptions, regionHandler);
+    }
 
-        double difference = 0.0;
-        String errorMessage = null;
+    private ComparisonOptions copyOptions(ComparisonOptions options) {
+        ComparisonOptions copy = new ComparisonOptions();
+        copy.setTolerance(options.getTolerance());
+        copy.setStretchToFit(options.isStretchToFit());
+        copy.setOriginalFilters(options.getOriginalFilters());
+        copy.setSampleFilters(options.getSampleFilters());
+        copy.setMapFilters(options.getMapFilters());
+        copy.setAnalyzeOffset(options.getAnalyzeOffset());
+        copy.setIgnoreRegions(options.getIgnoreRegions());
+        copy.setParallelism(options.getParallelism());
+        copy.setMismatchBudget(options.getMismatchBudget());
+        return copy;
+    }
+
+    /**
+     * Exceptions are passed to the future as they are, the pool itself would replace the ones
+     * thrown in its threads with copies which don't keep the validation details
+     */
+    private static <T> Future<T> submit(ForkJoinPool pool, Callable<T> callable) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        pool.execute(() -> {
+            try {
+                future.complete(callable.call());
+            } catch (Throwable ex) {
+                future.completeExceptionally(ex);
+            }
+        });
+        return future;
+    }
 
-        SpecImage.ErrorRate errorRate = spec.getErrorRate();
-        if (errorRate == null) {
-            errorRate = GalenConfig.getConfig().getImageSpecDefaultErrorRate();
+    private ImageCheck checkImages(SpecImage spec, PageArea pageArea, SpecImage.ErrorRate errorRate, Sample sample)
+            throws ValidationErrorException {
+        ComparisonOptions options = pageArea.options;
+        String imagePath = sample.path;
+        BufferedImage sampleImage = sample.image.getImage();
+
+        Rectangle sampleArea = sampleArea(spec, sampleImage);
+
+        if (isExactCopy(pageArea, sample, sampleArea, options)) {
+            return new ImageCheck(imagePath, -errorRate.getValue(), NO_RESULT, NO_ERROR_MESSAGE);
         }
 
+        ImageCompareResult result = Rainbow4J.compare(pageArea.image, sampleImage, pageArea.area, sampleArea, options);
+
+        double difference = 0.0;
+        String errorMessage = null;
+
         if (errorRate.getType() == SpecImage.ErrorRateType.PERCENT) {
             difference = result.getPercentage() - errorRate.getValue();
             if (difference > 0) {
@@ -203,9 +430,52 @@ public class SpecValidationImage extends SpecValidation<SpecImage> {
         return new ImageCheck(imagePath, difference, result, errorMessage);
     }
 
-    private boolean isOnlyOnePixelOutsideScreenshot(Rect elementArea, BufferedImage pageImage) {
-        int dx = elementArea.getLeft() + elementArea.getWidth() - pageImage.getWidth();
-        int dy = elementArea.getTop() + elementArea.getHeight() - pageImage.getHeight();
+    /**
+     * Pixels which are exactly the same as in the sample always pass the comparison,
+     * unless there are filters which could make them different. The sample is only compared
+     * pixel by pixel when its content hash is the same as the one of the page element
+     */
+    private boolean isExactCopy(PageArea pageArea, Sample sample, Rectangle sampleArea, ComparisonOptions options) {
+        if (!isEmpty(options.getOriginalFilters()) || !isEmpty(options.getSampleFilters()) || !isEmpty(options.getMapFilters())
+                || pageArea.area.width != sampleArea.width || pageArea.area.height != sampleArea.height
+                || !new Rectangle(0, 0, pageArea.image.getWidth(), pageArea.image.getHeight()).contains(pageArea.area)
+                || !new Rectangle(0, 0, sample.image.getImage().getWidth(), sample.image.getImage().getHeight()).contains(sampleArea)) {
+            return false;
+        }
+
+        return pageArea.getContentHash() == sample.image.getContentHash(sampleArea)
+                && ImageHash.samePixels(pageArea.image, pageArea.area, sample.image.getImage(), sampleArea);
+    }
+
+    private boolean isEmpty(List<?> list) {
+        return list == null || list.isEmpty();
+    }
+
+    /**
+     * Calculates the maximum amount of mismatching pixels for which the image check still passes,
+     * so that the comparison could stop as soon as it is exceeded
+     */
+    private long calculateMismatchBudget(SpecImage.ErrorRate errorRate, Rect elementArea) {
+        if (errorRate.getType() == SpecImage.ErrorRateType.PERCENT) {
+            double totalPixels = elementArea.getWidth() * elementArea.getHeight();
+            long budget = (long) Math.floor(errorRate.getValue() * totalPixels / 100.0);
+
+            // adjusting the budget so that it is consistent with the percentage calculated by comparison
+            while (100.0 * (budget + 1) / totalPixels <= errorRate.getValue()) {
+                budget++;
+            }
+            while (budget >= 0 && 100.0 * budget / totalPixels > errorRate.getValue()) {
+                budget--;
+            }
+            return budget;
+        } else {
+            return (long) Math.floor(errorRate.getValue());
+        }
+    }
+
+    private boolean isOnlyOnePixelOutsideScreenshot(Rect elementArea, Dimension screenshotSize) {
+        int dx = elementArea.getLeft() + elementArea.getWidth() - screenshotSize.width;
+        int dy = elementArea.getTop() + elementArea.getHeight() - screenshotSize.height;
 
         return Math.max(dx, dy) == 1;
     }
@@ -26,6 +26,7 @@ import org.openqa.selenium.WebDriver;
 import org.testng.annotations.Test;
 
 import java.io.File;
+import java.util.Collections;
 
 import static java.util.Arrays.asList;
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -41,8 +42,10 @@ public class GalenPageActionDumpPageTest {
         MockedDriver driver = new MockedDriver();
         driver.get("/mocks/pages/galen4j-pagedump.json");
         driver.setExpectedJavaScriptReturnValues(asList(
-                (Object) asList(0L, 0L, 300L, 1000L),
-                (Object) asList(0L, 0L, 300L, 500L)
+                // the page snapshot script, which the mocked browser doesn't run
+                null,
+                // screen and viewport, which are measured with a single script
+                asList(Collections.emptyList(), asList(300L, 1000L), asList(300L, 500L))
         ));
 
         GalenPageAction pageAction = new GalenPageActionDumpPage("Test page", "/specs/galen4j/pagedump.spec", pageDumpPath);
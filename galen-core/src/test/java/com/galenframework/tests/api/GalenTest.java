@@ -35,6 +35,7 @@ import org.testng.annotations.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.Properties;
 
 import static java.util.Arrays.asList;
@@ -73,8 +74,10 @@ public class GalenTest {
         MockedDriver driver = new MockedDriver();
         driver.get("/mocks/pages/galen4j-pagedump.json");
         driver.setExpectedJavaScriptReturnValues(asList(
-                 asList(300L, 500L),
-                 asList(300L, 1000L),
+                 // the page snapshot script, which the mocked browser doesn't run
+                 null,
+                 // screen and viewport, which are measured with a single script
+                 asList(Collections.emptyList(), asList(300L, 1000L), asList(300L, 500L)),
                  1L
         ));
 
@@ -105,8 +108,10 @@ public class GalenTest {
         MockedDriver driver = new MockedDriver();
         driver.get("/mocks/pages/galen4j-pagedump.json");
         driver.setExpectedJavaScriptReturnValues(asList(
-                (Object) asList(0L, 0L, 300L, 1000L),
-                (Object) asList(0L, 0L, 300L, 500L)
+                // the page snapshot script, which the mocked browser doesn't run
+                null,
+                // screen and viewport, which are measured with a single script
+                asList(Collections.emptyList(), asList(300L, 1000L), asList(300L, 500L))
         ));
 
         new GalenPageDump("test page")
@@ -136,8 +141,10 @@ public class GalenTest {
         MockedDriver driver = new MockedDriver();
         driver.get("/mocks/pages/galen4j-pagedump.json");
         driver.setExpectedJavaScriptReturnValues(asList(
-                (Object) asList(0L, 0L, 300L, 1000L),
-                (Object) asList(0L, 0L, 300L, 500L)
+                // the page snapshot script, which the mocked browser doesn't run
+                null,
+                // screen and viewport, which are measured with a single script
+                asList(Collections.emptyList(), asList(300L, 1000L), asList(300L, 500L))
         ));
 
         new GalenPageDump("test page")
@@ -167,8 +174,10 @@ public class GalenTest {
         MockedDriver driver = new MockedDriver();
         driver.get("/mocks/pages/galen4j-pagedump.json");
         driver.setExpectedJavaScriptReturnValues(asList(
-                (Object) asList(300L, 500L),
-                (Object) asList(300L, 1000L),
+                // the page snapshot script, which the mocked browser doesn't run
+                null,
+                // screen and viewport, which are measured with a single script
+                asList(Collections.emptyList(), asList(300L, 1000L), asList(300L, 500L)),
                 (Object) 1L
         ));
 
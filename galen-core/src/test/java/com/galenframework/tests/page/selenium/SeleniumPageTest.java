@@ -15,8 +15,12 @@
 ******************************************************************************/
 package com.galenframework.tests.page.selenium;
 
+import com.galenframework.config.GalenConfig;
+import com.galenframework.config.GalenProperty;
 import com.galenframework.page.AbsentPageElement;
+import com.galenframework.page.Rect;
 import com.galenframework.page.selenium.SeleniumPage;
+import com.galenframework.page.selenium.SnapshotPageElement;
 import com.galenframework.page.selenium.WebPageElement;
 import com.galenframework.specs.page.Locator;
 import com.galenframework.components.mocks.driver.MockedDriver;
@@ -26,10 +30,25 @@ import com.galenframework.page.PageElement;
 import com.galenframework.page.selenium.SeleniumPage;
 import com.galenframework.page.selenium.WebPageElement;
 import com.galenframework.specs.page.Locator;
+import org.openqa.selenium.By;
+import org.openqa.selenium.StaleElementReferenceException;
 import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.testng.Assert;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Arrays.asList;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
@@ -81,4 +100,339 @@ public class SeleniumPageTest {
                 .withParent(new Locator("css", ".menu-item", 4)));
         assertThat(pageElement4, instanceOf(AbsentPageElement.class));
     }
+
+    @Test
+    public void shouldProcess_indexedLocators_ofMultiObjects() {
+        Locator menuItems = new Locator("css", ".menu-item");
+        assertThat(page.getObjectCount(menuItems), is(3));
+
+        for (int index = 1; index <= 3; index++) {
+            PageElement menuItem = page.getObject("menu-item-" + index, new Locator("css", ".menu-item", index));
+            assertThat(menuItem, instanceOf(WebPageElement.class));
+
+            PageElement link = page.getObject(new Locator("css", ".link").withParent(new Locator("css", ".menu-item", index)));
+            assertThat(link.getText(), is("Link " + index));
+        }
+
+        assertThat(page.getObject("menu-item-4", new Locator("css", ".menu-item", 4)), instanceOf(AbsentPageElement.class));
+    }
+
+    @Test
+    public void shouldMeasure_specialObjects_onlyOncePerPage_withSingleScript() {
+        MockedDriver mockedDriver = (MockedDriver) driver;
+        mockedDriver.setExpectedJavaScriptReturnValues(Collections.<Object>singletonList(
+                specialAreas(asList(1024L, 3000L), asList(1000L, 700L))
+        ));
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(page.getSpecialObject("screen").getArea(), is(new Rect(0, 0, 1024, 3000)));
+            assertThat(page.getSpecialObject("viewport").getArea(), is(new Rect(0, 0, 1000, 700)));
+        }
+        assertThat(mockedDriver.getAllExecutedJavascript().size(), is(1));
+    }
+
+    @Test
+    public void shouldMeasure_specialObjects_separately_whenScriptGivesNothing() {
+        MockedDriver mockedDriver = (MockedDriver) driver;
+        mockedDriver.setExpectedJavaScriptReturnValues(asList(
+                null,
+                asList(1024L, 3000L),
+                asList(1000L, 700L)
+        ));
+
+        assertThat(page.getSpecialObject("screen").getArea(), is(new Rect(0, 0, 1024, 3000)));
+        assertThat(page.getSpecialObject("viewport").getArea(), is(new Rect(0, 0, 1000, 700)));
+        assertThat(mockedDriver.getAllExecutedJavascript().size(), is(3));
+    }
+
+    @Test
+    public void shouldMeasure_specialObjects_again_whenPageIsInvalidated() {
+        MockedDriver mockedDriver = (MockedDriver) driver;
+        mockedDriver.setExpectedJavaScriptReturnValues(asList(
+                specialAreas(asList(1024L, 3000L), asList(1000L, 700L)),
+                specialAreas(asList(800L, 2000L), asList(780L, 500L))
+        ));
+
+        SeleniumPage seleniumPage = (SeleniumPage) page;
+        assertThat(seleniumPage.getSpecialObject("screen").getArea(), is(new Rect(0, 0, 1024, 3000)));
+        assertThat(seleniumPage.getSpecialObject("viewport").getArea(), is(new Rect(0, 0, 1000, 700)));
+
+        seleniumPage.invalidate();
+
+        assertThat(seleniumPage.getSpecialObject("screen").getArea(), is(new Rect(0, 0, 800, 2000)));
+        assertThat(seleniumPage.getSpecialObject("viewport").getArea(), is(new Rect(0, 0, 780, 500)));
+        assertThat(mockedDriver.getAllExecutedJavascript().size(), is(2));
+    }
+
+    @Test
+    public void shouldMeasure_specialObjects_andFindObjects_again_whenDriverIsResizedOrNavigated() {
+        FakeSearch driverSearch = new FakeSearch();
+        WebElement oldButton = fake(WebElement.class, new FakeSearch());
+        WebElement newButton = fake(WebElement.class, new FakeSearch());
+        driverSearch.returns(By.cssSelector(".button"), asList(oldButton), asList(newButton));
+        WebDriver fakeDriver = fake(WebDriver.class, driverSearch);
+
+        Page page = new SeleniumPage(fakeDriver);
+        Locator button = new Locator("css", ".button");
+        assertThat(webElementOf(page.getObject("button", button)), is(oldButton));
+        assertThat(webElementOf(page.getObject("button", button)), is(oldButton));
+
+        SeleniumPage.invalidatePages(fakeDriver);
+
+        assertThat(webElementOf(page.getObject("button", button)), is(newButton));
+        assertThat(driverSearch.searches(By.cssSelector(".button")), is(2));
+    }
+
+    private List<Object> specialAreas(List<Long> screenSize, List<Long> viewportSize) {
+        return asList(Collections.emptyList(), screenSize, viewportSize);
+    }
+
+    @Test
+    public void shouldServe_objects_fromPageSnapshot_withSingleScript() throws IOException {
+        GalenConfig.getConfig().setProperty(GalenProperty.GALEN_BROWSER_PAGE_SNAPSHOT, "true");
+        GalenConfig.getConfig().setProperty(GalenProperty.GALEN_BROWSER_PAGELEMENT_AREAFINDER, "jsbased");
+        try {
+            MockedDriver mockedDriver = (MockedDriver) driver;
+            WebElement usernameElement = driver.findElement(By.id("username"));
+            mockedDriver.setExpectedJavaScriptReturnValues(Collections.<Object>singletonList(asList(
+                    asList(
+                            asList(usernameElement, 1L, asList(10L, 20L, 100L, 30L)),
+                            asList(null, 0L)
+                    ),
+                    asList(1024L, 3000L),
+                    asList(1000L, 700L)
+            )));
+
+            Locator username = new Locator("id", "username");
+            Locator absent = new Locator("id", "blahlbha");
+            page.preloadObjects(asList(username, absent));
+
+            PageElement pageElement = page.getObject("username", username);
+            assertThat(pageElement, instanceOf(WebPageElement.class));
+            assertThat(pageElement.getArea(), is(new Rect(10, 20, 100, 30)));
+            assertThat(pageElement.isVisible(), is(true));
+            assertThat(pageElement.getText(), is("John"));
+            assertThat(page.getObjectCount(username), is(1));
+
+            assertThat(page.getObject("absent", absent), instanceOf(AbsentPageElement.class));
+            assertThat(page.getSpecialObject("screen").getArea(), is(new Rect(0, 0, 1024, 3000)));
+            assertThat(page.getSpecialObject("viewport").getArea(), is(new Rect(0, 0, 1000, 700)));
+            assertThat(mockedDriver.getAllExecutedJavascript().size(), is(1));
+        } finally {
+            GalenConfig.getConfig().reset();
+        }
+    }
+
+    @Test
+    public void snapshotObjects_shouldBeSame_asObjectsFoundOneByOne() throws IOException {
+        List<Locator> locators = asList(
+                new Locator("id", "username"),
+                new Locator("css", "#header"),
+                new Locator("css", "h1").withParent(new Locator("css", "#header")),
+                new Locator("css", ".menu-item", 1),
+                new Locator("css", ".menu-item", 3),
+                new Locator("css", ".link").withParent(new Locator("css", ".menu-item", 2)),
+                new Locator("id", "blahlbha")
+        );
+
+        // the snapshot script resolves the chains and measures the areas the same way as the objects are found one by one
+        List<Object> results = new LinkedList<>();
+        for (Locator locator : locators) {
+            PageElement element = page.getObject(locator);
+            if (element instanceof WebPageElement) {
+                Rect area = element.getArea();
+                results.add(asList(((WebPageElement) element).getWebElement(), (long) page.getObjectCount(locator),
+                        asList((double) area.getLeft(), (double) area.getTop(), (double) area.getWidth(), (double) area.getHeight())));
+            } else {
+                results.add(asList(null, (long) page.getObjectCount(locator)));
+            }
+        }
+
+        GalenConfig.getConfig().setProperty(GalenProperty.GALEN_BROWSER_PAGE_SNAPSHOT, "true");
+        try {
+            MockedDriver mockedDriver = (MockedDriver) driver;
+            mockedDriver.setExpectedJavaScriptReturnValues(Collections.<Object>singletonList(asList(
+                    results, asList(1024L, 3000L), asList(1000L, 700L)
+            )));
+
+            Page snapshotPage = new SeleniumPage(driver);
+            List<Locator> preloadedLocators = new LinkedList<>(locators);
+            preloadedLocators.add(new Locator("id", "username"));
+            snapshotPage.preloadObjects(preloadedLocators);
+
+            for (Locator locator : locators) {
+                // equal locators are served from the snapshot even if they are different instances
+                Locator sameLocator = copy(locator);
+                PageElement expected = page.getObject(locator);
+                PageElement actual = snapshotPage.getObject(sameLocator);
+
+                assertThat(snapshotPage.getObjectCount(sameLocator), is(page.getObjectCount(locator)));
+                if (expected instanceof AbsentPageElement) {
+                    assertThat(actual, instanceOf(AbsentPageElement.class));
+                } else {
+                    assertThat(actual, instanceOf(SnapshotPageElement.class));
+                    assertThat(((WebPageElement) actual).getWebElement(), is(((WebPageElement) expected).getWebElement()));
+                    assertThat(actual.getArea(), is(expected.getArea()));
+                    assertThat(actual.isVisible(), is(expected.isVisible()));
+                    assertThat(actual.getText(), is(expected.getText()));
+                }
+            }
+
+            assertThat(mockedDriver.getAllExecutedJavascript().size(), is(1));
+        } finally {
+            GalenConfig.getConfig().reset();
+        }
+    }
+
+    private Locator copy(Locator locator) {
+        Locator copy = new Locator(locator.getLocatorType(), locator.getLocatorValue(), locator.getIndex());
+        return locator.getParent() != null ? copy.withParent(copy(locator.getParent())) : copy;
+    }
+
+    @Test
+    public void shouldFind_eachLocatorPrefix_onlyOnce() {
+        FakeSearch driverSearch = new FakeSearch();
+        FakeSearch headerSearch = new FakeSearch();
+        WebElement header = fake(WebElement.class, headerSearch);
+        WebElement caption = fake(WebElement.class, new FakeSearch());
+        WebElement subCaption = fake(WebElement.class, new FakeSearch());
+        driverSearch.returns(By.cssSelector("#header"), asList(header));
+        headerSearch.returns(By.cssSelector("h1"), asList(caption));
+        headerSearch.returns(By.cssSelector("h2"), asList(subCaption));
+
+        Page page = new SeleniumPage(fake(WebDriver.class, driverSearch));
+        Locator headerLocator = new Locator("css", "#header");
+        assertThat(webElementOf(page.getObject(headerLocator)), is(header));
+        assertThat(webElementOf(page.getObject(new Locator("css", "h1").withParent(headerLocator))), is(caption));
+        assertThat(webElementOf(page.getObject(new Locator("css", "h1").withParent(headerLocator))), is(caption));
+        assertThat(webElementOf(page.getObject(new Locator("css", "h2").withParent(headerLocator))), is(subCaption));
+        assertThat(page.getObjectCount(new Locator("css", "h2").withParent(headerLocator)), is(1));
+
+        assertThat(driverSearch.searches(By.cssSelector("#header")), is(1));
+        assertThat(headerSearch.searches(By.cssSelector("h1")), is(1));
+        assertThat(headerSearch.searches(By.cssSelector("h2")), is(1));
+    }
+
+    @Test
+    public void shouldNotRemember_absentElements() {
+        FakeSearch driverSearch = new FakeSearch();
+        WebElement button = fake(WebElement.class, new FakeSearch());
+        driverSearch.returns(By.cssSelector(".button"), Collections.<WebElement>emptyList(), asList(button));
+
+        Page page = new SeleniumPage(fake(WebDriver.class, driverSearch));
+        assertThat(page.getObject(new Locator("css", ".button")), instanceOf(AbsentPageElement.class));
+        assertThat(webElementOf(page.getObject(new Locator("css", ".button"))), is(button));
+    }
+
+    @Test
+    public void shouldFind_elementsAgain_whenParentGotStale() {
+        FakeSearch driverSearch = new FakeSearch();
+        FakeSearch staleHeaderSearch = new FakeSearch();
+        FakeSearch headerSearch = new FakeSearch();
+        WebElement staleHeader = fake(WebElement.class, staleHeaderSearch);
+        WebElement header = fake(WebElement.class, headerSearch);
+        WebElement caption = fake(WebElement.class, new FakeSearch());
+        driverSearch.returns(By.cssSelector("#header"), asList(staleHeader), asList(header));
+        staleHeaderSearch.returns(By.cssSelector("h1"), new StaleElementReferenceException("stale"));
+        headerSearch.returns(By.cssSelector("h1"), asList(caption));
+
+        Page page = new SeleniumPage(fake(WebDriver.class, driverSearch));
+        Locator headerLocator = new Locator("css", "#header");
+        assertThat(webElementOf(page.getObject(headerLocator)), is(staleHeader));
+        assertThat(webElementOf(page.getObject(new Locator("css", "h1").withParent(headerLocator))), is(caption));
+        assertThat(webElementOf(page.getObject(headerLocator)), is(header));
+    }
+
+    @Test
+    public void shouldFind_elementAgain_whenItGotStale() {
+        FakeSearch driverSearch = new FakeSearch();
+        FakeSearch headerSearch = new FakeSearch();
+        WebElement header = fake(WebElement.class, headerSearch);
+        WebElement staleCaption = fake(WebElement.class, new FakeSearch()
+                .answers("getTagName", "h1")
+                .answers("getText", new StaleElementReferenceException("stale")));
+        WebElement caption = fake(WebElement.class, new FakeSearch()
+                .answers("getTagName", "h1")
+                .answers("getText", "Caption"));
+        driverSearch.returns(By.cssSelector("#header"), asList(header));
+        headerSearch.returns(By.cssSelector("h1"), asList(staleCaption), asList(caption));
+
+        Page page = new SeleniumPage(fake(WebDriver.class, driverSearch));
+        Locator captionLocator = new Locator("css", "h1").withParent(new Locator("css", "#header"));
+        try {
+            page.getObject("caption", captionLocator).getText();
+            Assert.fail("Stale element should not be read");
+        } catch (StaleElementReferenceException e) {
+            // the element is found again next time
+        }
+
+        assertThat(page.getObject("caption", captionLocator).getText(), is("Caption"));
+        assertThat(headerSearch.searches(By.cssSelector("h1")), is(2));
+        assertThat(driverSearch.searches(By.cssSelector("#header")), is(1));
+    }
+
+    private WebElement webElementOf(PageElement pageElement) {
+        return ((WebPageElement) pageElement).getWebElement();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T fake(Class<T> type, FakeSearch search) {
+        return (T) Proxy.newProxyInstance(SeleniumPageTest.class.getClassLoader(), new Class<?>[]{type}, search);
+    }
+
+    /**
+     * Driver or element which gives out the next of the prepared results for each lookup
+     * and counts how many times each locator was looked up
+     */
+    private static class FakeSearch implements InvocationHandler {
+        private final Map<By, LinkedList<Object>> results = new HashMap<>();
+        private final Map<By, Integer> searches = new HashMap<>();
+        private final Map<String, Object> answers = new HashMap<>();
+
+        FakeSearch returns(By by, Object... lookups) {
+            results.put(by, new LinkedList<>(asList(lookups)));
+            return this;
+        }
+
+        FakeSearch answers(String methodName, Object answer) {
+            answers.put(methodName, answer);
+            return this;
+        }
+
+        int searches(By by) {
+            return searches.getOrDefault(by, 0);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "findElements":
+                    By by = (By) args[0];
+                    searches.put(by, searches(by) + 1);
+                    LinkedList<Object> lookups = results.get(by);
+                    if (lookups == null) {
+                        return new LinkedList<WebElement>();
+                    }
+                    return answer(lookups.size() > 1 ? lookups.poll() : lookups.peek());
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "fake " + method.getDeclaringClass().getSimpleName();
+                default:
+                    if (answers.containsKey(method.getName())) {
+                        return answer(answers.get(method.getName()));
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        }
+
+        private Object answer(Object answer) {
+            if (answer instanceof RuntimeException) {
+                throw (RuntimeException) answer;
+            }
+            return answer;
+        }
+    }
 }
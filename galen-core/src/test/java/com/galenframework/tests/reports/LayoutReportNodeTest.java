@@ -15,6 +15,7 @@
 ******************************************************************************/
 package com.galenframework.tests.reports;
 
+import com.galenframework.rainbow4j.Rainbow4J;
 import com.galenframework.reports.model.*;
 import com.galenframework.reports.nodes.TestReportNode;
 import com.galenframework.reports.nodes.LayoutReportNode;
@@ -24,10 +25,17 @@ import com.galenframework.specs.SpecAbsent;
 import com.galenframework.validation.ValidationError;
 import com.galenframework.validation.ValidationObject;
 import com.galenframework.validation.ValidationResult;
+import org.apache.commons.io.FileUtils;
 import org.testng.annotations.Test;
 
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
@@ -55,6 +63,66 @@ public class LayoutReportNodeTest {
         assertThat(report.warnings(), is(2));
     }
 
+    @Test
+    public void screenshotFile_shouldOnlyBeWritten_whenReportIsCopied() throws IOException {
+        LayoutReport report = new LayoutReport();
+        AtomicInteger writes = new AtomicInteger(0);
+        String screenshot = report.registerFile("screenshot.png", () -> {
+            writes.incrementAndGet();
+            File file = File.createTempFile("screenshot", ".png");
+            FileUtils.writeStringToFile(file, "screenshot");
+            return file;
+        });
+        assertThat(writes.get(), is(0));
+
+        File reportDir = Files.createTempDirectory("layout-report").toFile();
+        try {
+            report.getFileStorage().copyAllFilesTo(reportDir);
+            report.getFileStorage().copyAllFilesTo(reportDir);
+
+            assertThat(writes.get(), is(1));
+            assertThat(FileUtils.readFileToString(new File(reportDir, screenshot)), is("screenshot"));
+        } finally {
+            report.getFileStorage().cleanup();
+            FileUtils.deleteQuietly(reportDir);
+        }
+    }
+
+    @Test
+    public void screenshotFile_shouldNotBeWritten_whenReportIsNotCopied() {
+        LayoutReport report = new LayoutReport();
+        AtomicInteger writes = new AtomicInteger(0);
+        report.registerFile("screenshot.png", () -> {
+            writes.incrementAndGet();
+            return File.createTempFile("screenshot", ".png");
+        });
+
+        report.getFileStorage().cleanup();
+
+        assertThat(writes.get(), is(0));
+    }
+
+    @Test
+    public void reportImageWriter_shouldWriteAllPendingImages_onShutdown() throws Exception {
+        File dir = Files.createTempDirectory("report-images").toFile();
+        try {
+            List<File> files = new LinkedList<>();
+            for (int i = 0; i < 5; i++) {
+                File file = new File(dir, "image-" + i + ".png");
+                ReportImageWriter.write(new BufferedImage(300, 200, BufferedImage.TYPE_INT_RGB), file);
+                files.add(file);
+            }
+
+            assertThat(ReportImageWriter.shutdown(30, TimeUnit.SECONDS), is(true));
+
+            for (File file : files) {
+                assertThat(file.getName() + " should be written", Rainbow4J.loadImage(file.getAbsolutePath()).getWidth(), is(300));
+            }
+        } finally {
+            FileUtils.deleteQuietly(dir);
+        }
+    }
+
     private LayoutReport createSampleLayoutReport() {
         LayoutReport report = new LayoutReport();
         List<ValidationResult> list = new LinkedList<>();
@@ -820,9 +820,9 @@ public class PageSpecReaderTest extends PageSpecReaderTestBase {
     @Test
     public void screenAndViewportObjects_shouldBeAccessible_fromJavaScript_codeBlocks() throws IOException {
         MockedDriver driver = new MockedDriver();
-        driver.setExpectedJavaScriptReturnValues(asList(
-                (Object)asList(1000L, 700L),
-                (Object)asList(900L, 700L)
+        // screen and viewport are measured with a single script
+        driver.setExpectedJavaScriptReturnValues(Collections.<Object>singletonList(
+                asList(Collections.emptyList(), asList(1000L, 700L), asList(900L, 700L))
         ));
         PageSpec pageSpec = readPageSpec("speclang2/screen-and-viewport-from-js.gspec", new SeleniumPage(driver));
 
@@ -0,0 +1,128 @@
+/*******************************************************************************
+* Copyright 2016 Ivan Shubin http://galenframework.com
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*   http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+******************************************************************************/
+package com.galenframework.tests.utils;
+
+import com.galenframework.utils.TiledScreenshot;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class TiledScreenshotTest {
+
+    @DataProvider
+    public Object[][] ratioProvider() {
+        return new Object[][]{{2.0}, {1.5}, {2.6}};
+    }
+
+    @DataProvider
+    public Object[][] areaProvider() {
+        return new Object[][]{
+                {1.0, new Rectangle(10, 20, 100, 50)},
+                {1.0, new Rectangle(0, 150, 200, 200)},
+                {2.0, new Rectangle(10, 20, 100, 50)},
+                {1.5, new Rectangle(30, 90, 120, 100)},
+                {2.6, new Rectangle(5, 60, 50, 40)},
+                {2.0, new Rectangle(150, 150, 100, 100)}
+        };
+    }
+
+    @Test(dataProvider = "ratioProvider")
+    public void scaledTiles_shouldBeSame_asScaledWholePage(double ratio) throws IOException {
+        BufferedImage page = ImageIO.read(getClass().getResource("/imgs/page-screenshot.png"));
+        TiledScreenshot screenshot = createTiledScreenshot(page);
+        screenshot.scaleDown(ratio);
+
+        BufferedImage expected = scaleSmooth(page, (int) (page.getWidth() / ratio), (int) (page.getHeight() / ratio));
+
+        assertSamePixels(screenshot.toImage(), expected);
+
+        File file = File.createTempFile("tiled-screenshot", ".png");
+        try {
+            screenshot.writeTo(file, 6);
+            assertSamePixels(ImageIO.read(file), expected);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test(dataProvider = "areaProvider")
+    public void area_shouldBeSame_asAreaOfWholePage(double ratio, Rectangle area) throws IOException {
+        BufferedImage page = ImageIO.read(getClass().getResource("/imgs/page-screenshot.png"));
+        TiledScreenshot screenshot = createTiledScreenshot(page);
+        screenshot.scaleDown(ratio);
+
+        BufferedImage expected = ratio == 1.0 ? page : scaleSmooth(page, (int) (page.getWidth() / ratio), (int) (page.getHeight() / ratio));
+        Rectangle expectedArea = area.intersection(new Rectangle(0, 0, expected.getWidth(), expected.getHeight()));
+
+        assertSamePixels(screenshot.readArea(area), expected.getSubimage(expectedArea.x, expectedArea.y, expectedArea.width, expectedArea.height));
+    }
+
+    private TiledScreenshot createTiledScreenshot(BufferedImage page) throws IOException {
+        int tileHeight = page.getHeight() / 3 + 7;
+
+        TiledScreenshot screenshot = new TiledScreenshot(page.getWidth(), page.getHeight());
+        for (int top = 0; top < page.getHeight(); top += tileHeight) {
+            BufferedImage tile = page.getSubimage(0, top, page.getWidth(), Math.min(tileHeight, page.getHeight() - top));
+            screenshot.addTile(encode(tile), new Rectangle(0, 0, tile.getWidth(), tile.getHeight()), top);
+        }
+        return screenshot;
+    }
+
+    private BufferedImage scaleSmooth(BufferedImage image, int width, int height) {
+        BufferedImage rgbImage = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = rgbImage.createGraphics();
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+
+        Image scaledInstance = rgbImage.getScaledInstance(width, height, Image.SCALE_SMOOTH);
+        BufferedImage scaledImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        g = scaledImage.createGraphics();
+        g.drawImage(scaledInstance, 0, 0, null);
+        g.dispose();
+        return scaledImage;
+    }
+
+    private byte[] encode(BufferedImage image) throws IOException {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", stream);
+        return stream.toByteArray();
+    }
+
+    private void assertSamePixels(BufferedImage actual, BufferedImage expected) {
+        assertThat(actual.getWidth(), is(expected.getWidth()));
+        assertThat(actual.getHeight(), is(expected.getHeight()));
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                if ((actual.getRGB(x, y) & 0xffffff) != (expected.getRGB(x, y) & 0xffffff)) {
+                    Assert.fail("Pixel at " + x + ", " + y + " should be " + Integer.toHexString(expected.getRGB(x, y))
+                            + " but was " + Integer.toHexString(actual.getRGB(x, y)));
+                }
+            }
+        }
+    }
+}
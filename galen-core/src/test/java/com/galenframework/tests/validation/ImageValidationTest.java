@@ -16,6 +16,8 @@
 package com.galenframework.tests.validation;
 
 import com.galenframework.components.validation.MockedPage;
+import com.galenframework.config.GalenConfig;
+import com.galenframework.config.GalenProperty;
 import com.galenframework.page.PageElement;
 import com.galenframework.page.Rect;
 import com.galenframework.rainbow4j.filters.BlurFilter;
@@ -30,6 +32,7 @@ import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
 import java.awt.image.BufferedImage;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -38,6 +41,7 @@ import static java.util.Arrays.asList;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
 
 public class ImageValidationTest extends ValidationTestBase {
     private static final boolean PIXEL_UNIT = true;
@@ -65,6 +69,10 @@ public class ImageValidationTest extends ValidationTestBase {
             {specImage(asList("/imgs/button-sample-*.png"), 1, PIXEL_UNIT, 0, 5), page(new HashMap<String, PageElement>(){{
                 put("object", element(100, 90, 100, 40));
             }}, imageComparisonTestScreenshot)},
+
+            {specImage(asList("/imgs/button-sample-correct.png", "/imgs/undefined-image.png"), 1, PIXEL_UNIT, 0, 5), page(new HashMap<String, PageElement>(){{
+                put("object", element(100, 90, 100, 40));
+            }}, imageComparisonTestScreenshot)},
         };
     }
 
@@ -84,14 +92,14 @@ public class ImageValidationTest extends ValidationTestBase {
 
             {new ValidationResult(NO_SPEC, areas(new ValidationObject(new Rect(100, 90, 100, 40), "object")),
                     new ValidationError(messages("Element does not look like \"/imgs/button-sample-incorrect.png\". " +
-                        "There are 3820 mismatching pixels but max allowed is 600"))),
+                        "There are 3821 mismatching pixels but max allowed is 600"))),
                 specImage(asList("/imgs/button-sample-incorrect.png"), 600, PIXEL_UNIT, 0, 10), page(new HashMap<String, PageElement>() {{
                     put("object", element(100, 90, 100, 40));
                 }}, imageComparisonTestScreenshot)},
 
             {new ValidationResult(NO_SPEC, areas(new ValidationObject(new Rect(100, 90, 100, 40), "object")),
                     new ValidationError(messages("Element does not look like \"/imgs/button-sample-incorrect.png\". " +
-                        "There are 95.5% mismatching pixels but max allowed is 2%"))),
+                        "There are 95.53% mismatching pixels but max allowed is 2%"))),
                 specImage(asList("/imgs/button-sample-incorrect.png"), 2.0, PERCENTAGE_UNIT, 0, 10), page(new HashMap<String, PageElement>() {{
                     put("object", element(100, 90, 100, 40));
                 }}, imageComparisonTestScreenshot)},
@@ -118,6 +126,27 @@ public class ImageValidationTest extends ValidationTestBase {
         assertThat("Comparison map should not be null", error.getImageComparison().getComparisonMap(), is(notNullValue()));
     }
 
+    @Test
+    public void imageSpec_shouldGive_sameErrors_whenSamplesAreComparedConcurrently() throws IOException {
+        MockedPage page = page(new HashMap<String, PageElement>() {{
+            put("object", element(100, 90, 100, 40));
+        }}, imageComparisonTestScreenshot);
+        PageValidation validation = new PageValidation(null, page, createMockedPageSpec(page), null, null);
+
+        GalenConfig.getConfig().setProperty(GalenProperty.SPEC_IMAGE_COMPARISON_THREADS, "4");
+        try {
+            ValidationError matching = validation.check("object", specImage(asList("/imgs/button-sample-correct.png",
+                    "/imgs/undefined-image.png"), 1, PIXEL_UNIT, 0, 5)).getError();
+            ValidationError broken = validation.check("object", specImage(asList("/imgs/button-sample-incorrect.png",
+                    "/imgs/undefined-image.png"), 1, PIXEL_UNIT, 0, 5)).getError();
+
+            assertThat(matching, is(nullValue()));
+            assertThat(broken.getMessages(), is(asList("Couldn't load image: /imgs/button-sample-incorrect.png")));
+        } finally {
+            GalenConfig.getConfig().reset();
+        }
+    }
+
     private SpecImage specImage(List<String> imagePaths, double errorValue, boolean isPixelUnit, int pixelSmooth, int tolerance) {
         return specImage(imagePaths, errorValue, isPixelUnit, pixelSmooth, tolerance, null);
     }
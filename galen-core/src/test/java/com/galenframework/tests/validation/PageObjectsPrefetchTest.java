@@ -0,0 +1,66 @@
+/*******************************************************************************
+* Copyright 2016 Ivan Shubin http://galenframework.com
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*   http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+******************************************************************************/
+package com.galenframework.tests.validation;
+
+import com.galenframework.components.validation.MockedPage;
+import com.galenframework.speclang2.pagespec.PageSpecReader;
+import com.galenframework.speclang2.pagespec.SectionFilter;
+import com.galenframework.specs.page.Locator;
+import com.galenframework.specs.page.PageSpec;
+import com.galenframework.validation.PageObjectsPrefetch;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Properties;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+
+public class PageObjectsPrefetchTest {
+
+    @Test
+    public void shouldCollect_validatedObjects_andObjectsFromSpecArguments() {
+        PageSpec pageSpec = new PageSpec();
+        for (String objectName : new String[]{"header", "button", "textfield", "container", "menu-item-1", "menu-item-2", "footer", "unused"}) {
+            pageSpec.addObject(objectName, new Locator("css", "#" + objectName));
+        }
+
+        pageSpec.addSpec("main", "button", "near textfield 10px left");
+        pageSpec.addSpec("main", "header", "width 50% of container/width");
+        pageSpec.addSpec("main", "header", "contains menu-item-*");
+        pageSpec.addSpec("main", "footer", "visible");
+        pageSpec.addSpec("main", "screen", "visible");
+
+        assertThat(new PageObjectsPrefetch(pageSpec).collectObjectNames(),
+                containsInAnyOrder("button", "textfield", "header", "container", "menu-item-1", "menu-item-2", "footer"));
+    }
+
+    @Test
+    public void shouldCollect_onlyObjects_ofSectionsWhichMatchTags() throws IOException {
+        assertThat(new PageObjectsPrefetch(readPageSpec(new SectionFilter(asList("desktop"), Collections.<String>emptyList()))).collectObjectNames(),
+                containsInAnyOrder("sidebar", "header", "footer"));
+
+        assertThat(new PageObjectsPrefetch(readPageSpec(new SectionFilter(asList("mobile", "desktop"), asList("desktop")))).collectObjectNames(),
+                containsInAnyOrder("menu", "header", "footer"));
+    }
+
+    private PageSpec readPageSpec(SectionFilter sectionFilter) throws IOException {
+        return new PageSpecReader().read("/specs/prefetch/tagged-objects.gspec", new MockedPage(), sectionFilter,
+                new Properties(), Collections.<String, Object>emptyMap(), null);
+    }
+}
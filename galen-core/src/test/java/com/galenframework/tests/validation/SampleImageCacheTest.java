@@ -0,0 +1,53 @@
+/*******************************************************************************
+* Copyright 2016 Ivan Shubin http://galenframework.com
+* 
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* 
+*   http://www.apache.org/licenses/LICENSE-2.0
+* 
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+******************************************************************************/
+package com.galenframework.tests.validation;
+
+import com.galenframework.validation.ImageHash;
+import com.galenframework.validation.SampleImageCache;
+import org.testng.annotations.Test;
+
+import java.awt.Rectangle;
+import java.io.IOException;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class SampleImageCacheTest {
+
+    @Test
+    public void shouldDecode_sameSample_onlyOnce() throws IOException {
+        SampleImageCache cache = new SampleImageCache();
+
+        SampleImageCache.SampleImage first = cache.load("/imgs/button-sample-correct.png");
+        SampleImageCache.SampleImage second = cache.load("/imgs/button-sample-correct.png");
+
+        assertThat(second, is(sameInstance(first)));
+        assertThat(cache.size(), is(1));
+    }
+
+    @Test
+    public void contentHash_shouldOnlyBeSame_forSamePixels() throws IOException {
+        SampleImageCache cache = new SampleImageCache();
+        SampleImageCache.SampleImage correct = cache.load("/imgs/button-sample-correct.png");
+        SampleImageCache.SampleImage incorrect = cache.load("/imgs/button-sample-incorrect.png");
+        Rectangle area = new Rectangle(0, 0, 100, 40);
+
+        assertThat(correct.getContentHash(area), is(ImageHash.contentHash(correct.getImage(), area)));
+        assertThat(correct.getContentHash(area), is(not(incorrect.getContentHash(area))));
+        assertThat(ImageHash.samePixels(correct.getImage(), area, correct.getImage(), area), is(true));
+        assertThat(ImageHash.samePixels(correct.getImage(), area, incorrect.getImage(), area), is(false));
+    }
+}
@@ -0,0 +1,138 @@
+/*******************************************************************************
+* Copyright 2016 Ivan Shubin http://galenframework.com
+* 
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* 
+*   http://www.apache.org/licenses/LICENSE-2.0
+* 
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+******************************************************************************/
+package com.galenframework.rainbow4j;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pool of pixel buffers shared between all threads. Buffers are grouped in buckets by their size
+ * which is rounded up to a quarter of the nearest power of two, so a buffer could be reused for
+ * a slightly smaller image. Buffers which are returned when the pool already retains
+ * the maximum amount of bytes are left for garbage collector.
+ */
+public class BufferPool {
+
+    private static final int MIN_BUCKET_SIZE = 1024;
+
+    private static final BufferPool defaultPool = new BufferPool(Math.min(256L * 1024 * 1024, Runtime.getRuntime().maxMemory() / 8));
+
+    private final Map<Integer, ConcurrentLinkedDeque<byte[]>> arrays = new ConcurrentHashMap<>();
+
+    private volatile long maxRetainedBytes;
+    private final AtomicLong retainedBytes = new AtomicLong(0);
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+
+    public BufferPool(long maxRetainedBytes) {
+        this.maxRetainedBytes = maxRetainedBytes;
+    }
+
+    public static BufferPool getDefault() {
+        return defaultPool;
+    }
+
+    /**
+     * @return array of at least the given size. The contents of the array are not cleared
+     */
+    public byte[] borrowBytes(int size) {
+        byte[] array = poll(bucketSize(size));
+        if (array != null) {
+            retainedBytes.addAndGet(-array.length);
+            return array;
+        }
+        return new byte[bucketSize(size)];
+    }
+
+    public void returnBytes(byte[] array) {
+        if (array.length == bucketSize(array.length) && reserve(array.length)) {
+            arrays.computeIfAbsent(array.length, k -> new ConcurrentLinkedDeque<>()).push(array);
+        }
+    }
+
+    /**
+     * Releases all retained buffers
+     */
+    public void clear() {
+        for (ConcurrentLinkedDeque<byte[]> bucket : arrays.values()) {
+            for (byte[] array = bucket.poll(); array != null; array = bucket.poll()) {
+                retainedBytes.addAndGet(-array.length);
+            }
+        }
+    }
+
+    private byte[] poll(int bucketSize) {
+        ConcurrentLinkedDeque<byte[]> bucket = arrays.get(bucketSize);
+        byte[] array = bucket != null ? bucket.poll() : null;
+        if (array != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return array;
+    }
+
+    private boolean reserve(int size) {
+        long retained;
+        do {
+            retained = retainedBytes.get();
+            if (retained + size > maxRetainedBytes) {
+                return false;
+            }
+        } while (!retainedBytes.compareAndSet(retained, retained + size));
+        return true;
+    }
+
+    static int bucketSize(int size) {
+        if (size <= MIN_BUCKET_SIZE) {
+            return MIN_BUCKET_SIZE;
+        }
+        int step = Integer.highestOneBit(size) / 4;
+        long rounded = ((long) size + step - 1) / step * step;
+        return (int) Math.min(rounded, Integer.MAX_VALUE);
+    }
+
+    public long getMaxRetainedBytes() {
+        return maxRetainedBytes;
+    }
+
+    public void setMaxRetainedBytes(long maxRetainedBytes) {
+        this.maxRetainedBytes = maxRetainedBytes;
+    }
+
+    /**
+     * @return amount of bytes in buffers which are kept in the pool and are not borrowed at the moment
+     */
+    public long getRetainedBytes() {
+        return retainedBytes.get();
+    }
+
+    /**
+     * @return amount of times a buffer was reused from the pool
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return amount of times a new buffer had to be allocated
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+}
@@ -0,0 +1,99 @@
+/*******************************************************************************
+* Copyright 2016 Ivan Shubin http://galenframework.com
+* 
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* 
+*   http://www.apache.org/licenses/LICENSE-2.0
+* 
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+******************************************************************************/
+package com.galenframework.rainbow4j;
+
+import java.util.Arrays;
+
+/**
+ * Counts pixels per color bucket in a primitive open-addressing hash table,
+ * so that the memory only depends on the amount of distinct buckets in the image
+ */
+class ColorHistogram {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * Keys are stored shifted by one so that 0 marks an empty slot
+     */
+    private int[] keys = new int[INITIAL_CAPACITY];
+    private int[] counts = new int[INITIAL_CAPACITY];
+    private int size = 0;
+
+    void add(int key, int amount) {
+        int mask = keys.length - 1;
+        int slot = slot(key, mask);
+        while (keys[slot] != 0 && keys[slot] != key + 1) {
+            slot = (slot + 1) & mask;
+        }
+
+        if (keys[slot] == 0) {
+            keys[slot] = key + 1;
+            counts[slot] = amount;
+            size++;
+            if (size * 4 > keys.length * 3) {
+                grow();
+            }
+        } else {
+            counts[slot] += amount;
+        }
+    }
+
+    /**
+     * @return amount of distinct buckets
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return buckets with their amounts sorted by bucket, packed as bucket in the high 32 bits and amount in the low 32 bits
+     */
+    long[] toSortedEntries() {
+        long[] entries = new long[size];
+        int amount = 0;
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != 0) {
+                entries[amount++] = ((long) (keys[slot] - 1) << 32) | (counts[slot] & 0xffffffffL);
+            }
+        }
+        Arrays.sort(entries);
+        return entries;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        int[] oldCounts = counts;
+        keys = new int[oldKeys.length * 2];
+        counts = new int[oldKeys.length * 2];
+
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int slot = slot(oldKeys[i] - 1, mask);
+                while (keys[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+
+    private static int slot(int key, int mask) {
+        int hash = key * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+}
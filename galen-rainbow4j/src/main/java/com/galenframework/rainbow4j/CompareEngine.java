@@ -0,0 +1,142 @@
+/*******************************************************************************
+* Copyright 2016 Ivan Shubin http://galenframework.com
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*   http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+******************************************************************************/
+package com.galenframework.rainbow4j;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the {@link CompareKernel} either in the current thread or splits the compared area into row bands
+ * and processes them on the {@link ComparisonPool} with as many threads as the parallelism of the comparison.
+ * In case the comparison is already running in one of the comparison pools, e.g. when several samples are compared
+ * at the same time, the bands are processed in that pool instead.
+ * The amount of bands is also limited by the parallelism.
+ * Each band writes its own rows of the comparison map so the map is identical to the one produced by a serial comparison.
+ * If the thread which started the comparison is interrupted or the comparison is cancelled with
+ * {@link ComparisonOptions#cancel()}, the comparison stops with {@link CancellationException}
+ * before the next band or the next offset is compared.
+ */
+class CompareEngine {
+
+    /**
+     * Minimum amount of pixels per band. Smaller areas are not worth splitting
+     */
+    static final int MIN_PIXELS_PER_BAND = 32768;
+
+    private final CompareKernel kernel;
+    private final ComparisonOptions options;
+    private final int parallelism;
+
+    CompareEngine(CompareKernel kernel, ComparisonOptions options) {
+        this.kernel = kernel;
+        this.options = options;
+        this.parallelism = options.getParallelism();
+    }
+
+    /**
+     * @see CompareKernel#compare(int, int, ImageHandler, long)
+     */
+    long compare(int offsetX, int offsetY, ImageHandler map, long limit) {
+        return run(offsetX, offsetY, map, limit);
+    }
+
+    /**
+     * Counts mismatching pixels without building the comparison map
+     * @return amount of mismatching pixels if it is within the given budget or any value bigger than the budget otherwise
+     */
+    long countWithinBudget(int offsetX, int offsetY, long budget) {
+        return run(offsetX, offsetY, null, budget + 1);
+    }
+
+    private long run(int offsetX, int offsetY, ImageHandler map, long limit) {
+        Thread caller = Thread.currentThread();
+        checkInterrupted(caller);
+
+        int rowsPerBand = Math.max(1, MIN_PIXELS_PER_BAND / Math.max(1, kernel.getWidth()));
+        if (parallelism > 1) {
+            rowsPerBand = Math.max(rowsPerBand, (kernel.getHeight() + parallelism - 1) / parallelism);
+        }
+
+        if (parallelism > 1 && kernel.getHeight() > rowsPerBand) {
+            // bands don't know about the remaining pixels of each other, so they only stop once the limit is reached
+            BandTask task = new BandTask(caller, offsetX, offsetY, 0, kernel.getHeight(), rowsPerBand, map, limit, new AtomicLong(0));
+            ForkJoinPool currentPool = ComparisonPool.current();
+            return currentPool != null ? task.invoke() : ComparisonPool.get(parallelism).invoke(task);
+        } else {
+            return kernel.compareRows(offsetX, offsetY, 0, kernel.getHeight(), map, limit);
+        }
+    }
+
+    private void checkInterrupted(Thread caller) {
+        if (caller.isInterrupted()) {
+            throw new CancellationException("Image comparison was interrupted");
+        }
+        if (options.isCancelled()) {
+            throw new CancellationException("Image comparison was cancelled");
+        }
+    }
+
+    private class BandTask extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 3264917810238642012L;
+
+        private final Thread caller;
+        private final int offsetX;
+        private final int offsetY;
+        private final int fromY;
+        private final int toY;
+        private final int rowsPerBand;
+        private final ImageHandler map;
+        private final long limit;
+        private final AtomicLong totalMismatchingPixels;
+
+        BandTask(Thread caller, int offsetX, int offsetY, int fromY, int toY, int rowsPerBand, ImageHandler map, long limit, AtomicLong totalMismatchingPixels) {
+            this.caller = caller;
+            this.offsetX = offsetX;
+            this.offsetY = offsetY;
+            this.fromY = fromY;
+            this.toY = toY;
+            this.rowsPerBand = rowsPerBand;
+            this.map = map;
+            this.limit = limit;
+            this.totalMismatchingPixels = totalMismatchingPixels;
+        }
+
+        @Override
+        protected Long compute() {
+            if (toY - fromY <= rowsPerBand) {
+                // the limit is shared between all bands so that all of them stop
+                // as soon as the total amount of mismatching pixels reaches it
+                if (totalMismatchingPixels.get() >= limit) {
+                    return 0L;
+                }
+                // bands are processed by the threads of the pool, so it is the caller which gets interrupted
+                checkInterrupted(caller);
+                long mismatchingPixels = kernel.compareRows(offsetX, offsetY, fromY, toY, map, limit);
+                totalMismatchingPixels.addAndGet(mismatchingPixels);
+                return mismatchingPixels;
+            } else {
+                int middleY = fromY + (toY - fromY) / 2;
+                BandTask top = new BandTask(caller, offsetX, offsetY, fromY, middleY, rowsPerBand, map, limit, totalMismatchingPixels);
+                BandTask bottom = new BandTask(caller, offsetX, offsetY, middleY, toY, rowsPerBand, map, limit, totalMismatchingPixels);
+                top.fork();
+                long bottomResult = bottom.compute();
+                return top.join() + bottomResult;
+            }
+        }
+    }
+}
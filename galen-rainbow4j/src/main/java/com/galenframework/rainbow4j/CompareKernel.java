@@ -0,0 +1,305 @@
+/*******************************************************************************
+* Copyright 2016 Ivan Shubin http://galenframework.com
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*   http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+******************************************************************************/
+package com.galenframework.rainbow4j;
+
+import java.awt.*;
+import java.nio.ByteBuffer;
+
+/**
+ * Compares two images pixel by pixel working directly with the packed RGBA ints of the underlying buffers
+ * so that no objects are allocated per pixel.
+ */
+class CompareKernel {
+
+    // Map colors packed in the same RGBA order as they are stored in ImageHandler
+    static final int MAP_RED = 0xff0000ff;
+    static final int MAP_YELLOW = 0xffff00ff;
+    static final int MAP_GREEN = 0x00ff00ff;
+    static final int MAP_BLACK = 0x000000ff;
+    static final int MAP_IGNORED = 0x000000a0;
+
+    /**
+     * Unstretched runs are compared with a branch-free loop over the arrays behind the buffers, which the JIT
+     * unrolls much better than the generic loop. Setting "rainbow4j.compare.scalarKernel" system property to true
+     * falls back to the generic loop for all pixels
+     */
+    static final boolean DIRECT_KERNEL = !Boolean.getBoolean("rainbow4j.compare.scalarKernel");
+
+    /**
+     * Amount of pixels compared by the direct kernel between checks of the mismatch limit
+     */
+    private static final int DIRECT_CHUNK = 1024;
+
+    private final ByteBuffer bytesA;
+    private final ByteBuffer bytesB;
+    private final int imageAWidth;
+    private final int imageAHeight;
+    private final int imageBWidth;
+    private final int imageBHeight;
+
+    private final int Cax, Cay, Cbx, Cby;
+    private final int Wa, Ha, Wb, Hb;
+    private final double Kx, Ky;
+
+    private final int tolerance;
+    private final boolean stretchToFit;
+    private final IgnoreRegionIndex ignoreRegions;
+    private final boolean directKernel;
+
+    /**
+     * @param ignoreRegions ignore regions in coordinates of image A handler
+     */
+    CompareKernel(ImageHandler handlerA, ImageHandler handlerB, Rectangle areaA, Rectangle areaB,
+                  ComparisonOptions options, IgnoreRegionIndex ignoreRegions) {
+        this.bytesA = handlerA.getBytes();
+        this.bytesB = handlerB.getBytes();
+        this.imageAWidth = handlerA.getWidth();
+        this.imageAHeight = handlerA.getHeight();
+        this.imageBWidth = handlerB.getWidth();
+        this.imageBHeight = handlerB.getHeight();
+
+        this.Cax = areaA.x;
+        this.Cay = areaA.y;
+        this.Cbx = areaB.x;
+        this.Cby = areaB.y;
+        this.Wa = areaA.width;
+        this.Ha = areaA.height;
+        this.Wb = areaB.width;
+        this.Hb = areaB.height;
+        this.Kx = ((double)Wb) / ((double)Wa);
+        this.Ky = ((double)Hb) / ((double)Ha);
+
+        this.tolerance = options.getTolerance();
+        this.stretchToFit = options.isStretchToFit();
+        this.ignoreRegions = ignoreRegions;
+        this.directKernel = DIRECT_KERNEL && !stretchToFit && bytesA.hasArray() && bytesB.hasArray();
+    }
+
+    /**
+     * Compares the area of image A (moved by the given offset) with the area of image B
+     * @param map a handler of the area size in which the comparison map is written.
+     *            Could be null in case only the amount of mismatching pixels is needed
+     * @param limit the comparison stops as soon as the amount of mismatching pixels reaches this limit
+     * @return amount of mismatching pixels
+     */
+    long compare(int offsetX, int offsetY, ImageHandler map, long limit) {
+        return compareRows(offsetX, offsetY, 0, Ha, map, limit);
+    }
+
+    /**
+     * Same as {@link #compare(int, int, ImageHandler, long)} but only processes rows from fromY (inclusive) to toY (exclusive)
+     * of the compared area. Used for splitting the comparison into bands which are processed in parallel.
+     */
+    long compareRows(int offsetX, int offsetY, int fromY, int toY, ImageHandler map, long limit) {
+        ByteBuffer mapBytes = map != null ? map.getBytes() : null;
+        long mismatchingPixels = 0;
+
+        // pixels of the area which are moved outside of image A are not compared
+        int insideFromX = Math.max(0, Math.min(Wa, -Cax - offsetX));
+        int insideToX = Math.max(insideFromX, Math.min(Wa, imageAWidth - Cax - offsetX));
+
+        for (int y = fromY; y < toY && mismatchingPixels < limit; y++) {
+            int yA = y + Cay + offsetY;
+            int mapRow = y * Wa * ImageHandler.BLOCK_SIZE;
+
+            if (yA < 0 || yA >= imageAHeight) {
+                fillMap(mapBytes, mapRow, 0, Wa, MAP_BLACK);
+                continue;
+            }
+
+            fillMap(mapBytes, mapRow, 0, insideFromX, MAP_BLACK);
+
+            int[] spans = ignoreRegions.getSpans(yA);
+            int shiftX = Cax + offsetX;
+            int x = insideFromX;
+            int spanIndex = 0;
+
+            while (x < insideToX && mismatchingPixels < limit) {
+                while (spanIndex < spans.length && spans[spanIndex + 1] - shiftX <= x) {
+                    spanIndex += 2;
+                }
+
+                int comparedToX = insideToX;
+                int ignoredToX = insideToX;
+                if (spanIndex < spans.length) {
+                    comparedToX = Math.min(insideToX, Math.max(x, spans[spanIndex] - shiftX));
+                    ignoredToX = Math.min(insideToX, spans[spanIndex + 1] - shiftX);
+                }
+
+                mismatchingPixels += compareRun(yA, toAreaBY(y), shiftX, x, comparedToX, mapBytes, mapRow, limit - mismatchingPixels);
+                if (mismatchingPixels >= limit) {
+                    break;
+                }
+                fillMap(mapBytes, mapRow, comparedToX, ignoredToX, MAP_IGNORED);
+                x = ignoredToX;
+            }
+
+            if (mismatchingPixels < limit) {
+                fillMap(mapBytes, mapRow, insideToX, Wa, MAP_BLACK);
+            }
+        }
+        return mismatchingPixels;
+    }
+
+    /**
+     * Compares a run of pixels in a single row in which none of the pixels are ignored
+     * @return amount of mismatching pixels in the run
+     */
+    private long compareRun(int yA, int yB, int shiftX, int fromX, int toX, ByteBuffer mapBytes, int mapRow, long limit) {
+        long mismatchingPixels = 0;
+        int rowA = yA * imageAWidth;
+        boolean rowBInside = yB < imageBHeight;
+
+        if (directKernel && rowBInside && (mapBytes == null || mapBytes.hasArray())) {
+            // only the pixels which have their pair inside of image B
+            int directToX = Math.min(toX, Math.max(fromX, imageBWidth - Cbx));
+            for (int x = fromX; x < directToX && mismatchingPixels < limit; x += DIRECT_CHUNK) {
+                int count = Math.min(DIRECT_CHUNK, directToX - x);
+                mismatchingPixels += compareDirect(
+                        bytesA.arrayOffset() + (rowA + x + shiftX) * ImageHandler.BLOCK_SIZE,
+                        bytesB.arrayOffset() + (yB * imageBWidth + x + Cbx) * ImageHandler.BLOCK_SIZE,
+                        count, mapBytes, mapRow + x * ImageHandler.BLOCK_SIZE);
+            }
+            if (mismatchingPixels >= limit) {
+                return limit;
+            }
+            fromX = directToX;
+        }
+
+        for (int x = fromX; x < toX && mismatchingPixels < limit; x++) {
+            int xB = toAreaBX(x);
+
+            int cA = bytesA.getInt((rowA + x + shiftX) * ImageHandler.BLOCK_SIZE);
+            int cB = MAP_BLACK;
+            if (xB < imageBWidth && rowBInside) {
+                cB = bytesB.getInt((yB * imageBWidth + xB) * ImageHandler.BLOCK_SIZE);
+            }
+
+            int colorError = 0;
+            if ((cA & 0xff) > 128 && (cB & 0xff) > 128) {
+                colorError = Math.abs((cA >>> 24) - (cB >>> 24))
+                        + Math.abs(((cA >> 16) & 0xff) - ((cB >> 16) & 0xff))
+                        + Math.abs(((cA >> 8) & 0xff) - ((cB >> 8) & 0xff));
+            }
+
+            int mapColor = MAP_BLACK;
+            if (colorError > tolerance) {
+                int diff = colorError - tolerance;
+                if (diff <= 30) {
+                    mapColor = MAP_GREEN;
+                } else if (diff < 80) {
+                    mapColor = MAP_YELLOW;
+                } else {
+                    mapColor = MAP_RED;
+                }
+                mismatchingPixels += 1;
+            }
+
+            if (mapBytes != null) {
+                mapBytes.putInt(mapRow + x * ImageHandler.BLOCK_SIZE, mapColor);
+            }
+        }
+        return mismatchingPixels;
+    }
+
+    /**
+     * Compares a run of pixels which are placed one after another in both images, giving the same results as {@link #compareRun}.
+     * The color error is masked out with bit operations instead of branching on alpha and mismatches are counted
+     * from the sign bit, so that the loop has no branches when the map is not needed.
+     * @return amount of mismatching pixels in the run
+     */
+    private int compareDirect(int indexA, int indexB, int count, ByteBuffer mapBytes, int mapRow) {
+        byte[] a = bytesA.array();
+        byte[] b = bytesB.array();
+        int mismatchingPixels = 0;
+
+        if (mapBytes == null) {
+            for (int i = 0; i < count; i++, indexA += ImageHandler.BLOCK_SIZE, indexB += ImageHandler.BLOCK_SIZE) {
+                int colorError = colorError(a, indexA, b, indexB);
+                mismatchingPixels += (tolerance - colorError) >>> 31;
+            }
+        } else {
+            byte[] map = mapBytes.array();
+            int mapIndex = mapBytes.arrayOffset() + mapRow;
+            for (int i = 0; i < count; i++, indexA += ImageHandler.BLOCK_SIZE, indexB += ImageHandler.BLOCK_SIZE, mapIndex += ImageHandler.BLOCK_SIZE) {
+                int colorError = colorError(a, indexA, b, indexB);
+                int mismatch = (tolerance - colorError) >>> 31;
+                mismatchingPixels += mismatch;
+
+                int mapColor = mismatch == 0 ? MAP_BLACK : mapColor(colorError - tolerance);
+                map[mapIndex] = (byte) (mapColor >>> 24);
+                map[mapIndex + 1] = (byte) (mapColor >>> 16);
+                map[mapIndex + 2] = (byte) (mapColor >>> 8);
+                map[mapIndex + 3] = (byte) mapColor;
+            }
+        }
+        return mismatchingPixels;
+    }
+
+    /**
+     * @return sum of absolute differences of the color channels or 0 in case any of the pixels is not opaque enough
+     */
+    private static int colorError(byte[] a, int indexA, byte[] b, int indexB) {
+        int alphaA = a[indexA + 3] & 0xff;
+        int alphaB = b[indexB + 3] & 0xff;
+        // -1 when both alphas are above 128, 0 otherwise
+        int opaqueMask = -(((128 - alphaA) & (128 - alphaB)) >>> 31);
+
+        return (Math.abs((a[indexA] & 0xff) - (b[indexB] & 0xff))
+                + Math.abs((a[indexA + 1] & 0xff) - (b[indexB + 1] & 0xff))
+                + Math.abs((a[indexA + 2] & 0xff) - (b[indexB + 2] & 0xff))) & opaqueMask;
+    }
+
+    private static int mapColor(int diff) {
+        if (diff <= 30) {
+            return MAP_GREEN;
+        } else if (diff < 80) {
+            return MAP_YELLOW;
+        } else {
+            return MAP_RED;
+        }
+    }
+
+    private static void fillMap(ByteBuffer mapBytes, int mapRow, int fromX, int toX, int color) {
+        if (mapBytes != null) {
+            for (int x = fromX; x < toX; x++) {
+                mapBytes.putInt(mapRow + x * ImageHandler.BLOCK_SIZE, color);
+            }
+        }
+    }
+
+    /**
+     * Converts the x coordinate within the compared area to the x coordinate in image B
+     */
+    int toAreaBX(int x) {
+        return stretchToFit ? Math.min((int) Math.round((((double) x) * Kx) + Cbx), Cbx + Wb - 1) : x + Cbx;
+    }
+
+    /**
+     * Converts the y coordinate within the compared area to the y coordinate in image B
+     */
+    int toAreaBY(int y) {
+        return stretchToFit ? Math.min((int) Math.round(((double) y) * Ky + Cby), Cby + Hb - 1) : y + Cby;
+    }
+
+    int getWidth() {
+        return Wa;
+    }
+
+    int getHeight() {
+        return Ha;
+    }
+}
@@ -30,6 +30,9 @@ public class ComparisonOptions {
     private List<ImageFilter> mapFilters = new LinkedList<>();
     private int analyzeOffset = 0;
     private List<Rectangle> ignoreRegions;
+    private int parallelism = 1;
+    private Long mismatchBudget;
+    private volatile boolean cancelled = false;
 
     public void setTolerance(int tolerance) {
         this.tolerance = tolerance;
@@ -115,4 +118,45 @@ public class ComparisonOptions {
     public List<Rectangle> getIgnoreRegions() {
         return ignoreRegions;
     }
+
+    /**
+     * @return amount of threads which are used for comparing images. 1 means that images are compared in the current thread,
+     * otherwise they are compared on the {@link ComparisonPool} with this amount of threads
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Switches the comparison to a threshold mode in which it only has to find out whether the amount
+     * of mismatching pixels exceeds the given budget. The comparison stops as soon as the budget is exceeded.
+     * The comparison map and filtered images are only built when the budget is exceeded, otherwise the result
+     * contains no images. In both cases the amount of mismatching pixels is the same as in a full comparison.
+     * Map filters need the full comparison map so in case they are defined the budget is ignored.
+     * @param mismatchBudget maximum allowed amount of mismatching pixels or null for a full comparison
+     */
+    public void setMismatchBudget(Long mismatchBudget) {
+        this.mismatchBudget = mismatchBudget;
+    }
+
+    public Long getMismatchBudget() {
+        return mismatchBudget;
+    }
+
+    /**
+     * Stops all comparisons which are running with these options before their next pass over the image.
+     * They end with {@link java.util.concurrent.CancellationException}.
+     * Unlike interrupting the comparing thread it also works for comparisons running on the {@link ComparisonPool}
+     */
+    public void cancel() {
+        this.cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
 }
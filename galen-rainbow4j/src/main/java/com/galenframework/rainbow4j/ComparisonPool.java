@@ -0,0 +1,51 @@
+/*******************************************************************************
+* Copyright 2016 Ivan Shubin http://galenframework.com
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*   http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+******************************************************************************/
+package com.galenframework.rainbow4j;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Thread pools on which images are compared in parallel, so that comparisons don't compete with other users
+ * of the common {@link ForkJoinPool}. A pool is created lazily for each parallelism and is then shared by all comparisons,
+ * in practice there is only one as the parallelism comes from the configuration.
+ * Threads of the pools are daemons, so they don't keep the JVM running.
+ */
+public final class ComparisonPool {
+
+    private static final ConcurrentMap<Integer, ForkJoinPool> pools = new ConcurrentHashMap<>();
+
+    private ComparisonPool() {
+    }
+
+    /**
+     * @param parallelism amount of threads in the pool
+     * @return the pool which is shared by all comparisons with the same parallelism
+     */
+    public static ForkJoinPool get(int parallelism) {
+        return pools.computeIfAbsent(Math.max(1, parallelism), ForkJoinPool::new);
+    }
+
+    /**
+     * @return the comparison pool in which the current thread is running or null in case it runs outside of them
+     */
+    static ForkJoinPool current() {
+        ForkJoinPool pool = ForkJoinTask.getPool();
+        return pool != null && pools.containsValue(pool) ? pool : null;
+    }
+}
@@ -0,0 +1,152 @@
+/*******************************************************************************
+* Copyright 2016 Ivan Shubin http://galenframework.com
+* 
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* 
+*   http://www.apache.org/licenses/LICENSE-2.0
+* 
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+******************************************************************************/
+package com.galenframework.rainbow4j;
+
+import com.galenframework.rainbow4j.colorscheme.ColorClassifier;
+import com.galenframework.rainbow4j.colorscheme.CustomSpectrum;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.IntStream;
+
+/**
+ * Counts pixels of the area which are held by each of the color classifiers.
+ * Classifiers are only asked once for every distinct color: the result for all classifiers is kept
+ * as a bit mask in a lookup table which is split into pages by red and green channels,
+ * so only pages for colors which are present in the image are allocated.
+ * Big areas are split into bands of rows which are counted in parallel.
+ */
+class CustomSpectrumReader {
+
+    /**
+     * Minimum amount of pixels per band. Smaller areas are counted in the current thread
+     */
+    static final int MIN_PIXELS_PER_BAND = 65536;
+
+    /**
+     * Classifier results are kept in an int bit mask in which the highest bit marks that the color was classified
+     */
+    private static final int MAX_MEMOIZED_CLASSIFIERS = 31;
+    private static final int CLASSIFIED = 1 << 31;
+
+    private final ColorClassifier[] classifiers;
+    private final int maxColorSquareDistance;
+    private final AtomicReferenceArray<int[]> pages = new AtomicReferenceArray<>(256 * 256);
+
+    CustomSpectrumReader(List<ColorClassifier> classifiers, int maxColorSquareDistance) {
+        this.classifiers = classifiers.toArray(new ColorClassifier[classifiers.size()]);
+        this.maxColorSquareDistance = maxColorSquareDistance;
+    }
+
+    CustomSpectrum read(BufferedImage image, Rectangle area) {
+        int bands = (int) Math.max(1, Math.min(ForkJoinPool.getCommonPoolParallelism(), ((long) area.width * area.height) / MIN_PIXELS_PER_BAND));
+        int rowsPerBand = (area.height + bands - 1) / bands;
+
+        int[] counts;
+        if (bands > 1) {
+            counts = IntStream.range(0, bands).parallel()
+                    .mapToObj(band -> readBand(image, area, area.y + band * rowsPerBand, Math.min(area.y + (band + 1) * rowsPerBand, area.y + area.height)))
+                    .reduce(CustomSpectrumReader::sum)
+                    .get();
+        } else {
+            counts = readBand(image, area, area.y, area.y + area.height);
+        }
+
+        Map<String, Integer> collectedColors = new HashMap<>();
+        for (int i = 0; i < classifiers.length; i++) {
+            collectedColors.merge(classifiers[i].getName(), counts[i], Integer::sum);
+        }
+        return new CustomSpectrum(collectedColors, counts[classifiers.length], area.width * area.height);
+    }
+
+    /**
+     * @return amount of pixels held by each classifier followed by the amount of pixels which are not held by any of them
+     */
+    private int[] readBand(BufferedImage image, Rectangle area, int fromY, int toY) {
+        int[] counts = new int[classifiers.length + 1];
+        int[] row = new int[area.width];
+        boolean memoized = classifiers.length <= MAX_MEMOIZED_CLASSIFIERS;
+
+        for (int y = fromY; y < toY; y++) {
+            ImageHandler.readARGBRow(image, area.x, y, area.width, row);
+
+            for (int x = 0; x < area.width; x++) {
+                int rgb = row[x] & 0xffffff;
+                if (memoized) {
+                    int matches = classify(rgb) & ~CLASSIFIED;
+                    if (matches == 0) {
+                        counts[classifiers.length]++;
+                    }
+                    while (matches != 0) {
+                        counts[Integer.numberOfTrailingZeros(matches)]++;
+                        matches &= matches - 1;
+                    }
+                } else {
+                    countWithoutMemo(rgb, counts);
+                }
+            }
+        }
+        return counts;
+    }
+
+    private int classify(int rgb) {
+        int[] page = pages.get(rgb >>> 8);
+        if (page == null) {
+            pages.compareAndSet(rgb >>> 8, null, new int[256]);
+            page = pages.get(rgb >>> 8);
+        }
+
+        int matches = page[rgb & 0xff];
+        if (matches == 0) {
+            // different threads could classify the same color at the same time, but they all get the same result
+            matches = CLASSIFIED;
+            int r = rgb >> 16, g = (rgb >> 8) & 0xff, b = rgb & 0xff;
+            for (int i = 0; i < classifiers.length; i++) {
+                if (classifiers[i].holdsColor(r, g, b, maxColorSquareDistance)) {
+                    matches |= 1 << i;
+                }
+            }
+            page[rgb & 0xff] = matches;
+        }
+        return matches;
+    }
+
+    private void countWithoutMemo(int rgb, int[] counts) {
+        int r = rgb >> 16, g = (rgb >> 8) & 0xff, b = rgb & 0xff;
+        boolean colorMatched = false;
+        for (int i = 0; i < classifiers.length; i++) {
+            if (classifiers[i].holdsColor(r, g, b, maxColorSquareDistance)) {
+                counts[i]++;
+                colorMatched = true;
+            }
+        }
+        if (!colorMatched) {
+            counts[classifiers.length]++;
+        }
+    }
+
+    private static int[] sum(int[] a, int[] b) {
+        for (int i = 0; i < a.length; i++) {
+            a[i] += b[i];
+        }
+        return a;
+    }
+}
@@ -0,0 +1,114 @@
+/*******************************************************************************
+* Copyright 2016 Ivan Shubin http://galenframework.com
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*   http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+******************************************************************************/
+package com.galenframework.rainbow4j;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Scanline index of ignore regions. For every row of the image it keeps a sorted list of non-overlapping
+ * spans of ignored pixels, so that the comparison can skip whole ignored runs instead of testing
+ * every pixel against every region. Rows which are covered by the same set of regions share the same spans.
+ */
+class IgnoreRegionIndex {
+
+    private static final int[] NO_SPANS = new int[0];
+
+    /**
+     * Spans for each row stored as pairs of [startX, endX) relative to the origin of the index
+     */
+    private final int[][] rowSpans;
+
+    private IgnoreRegionIndex(int[][] rowSpans) {
+        this.rowSpans = rowSpans;
+    }
+
+    /**
+     * @param regions ignore regions in image coordinates. Could be null
+     * @param origin location of the indexed part of the image. All spans are relative to it
+     * @param height height of the indexed part of the image, rows outside of it are never requested
+     */
+    static IgnoreRegionIndex build(List<Rectangle> regions, Point origin, int height) {
+        int[][] rowSpans = new int[height][];
+        Arrays.fill(rowSpans, NO_SPANS);
+
+        List<Rectangle> nonEmptyRegions = new ArrayList<>();
+        if (regions != null) {
+            for (Rectangle region : regions) {
+                if (region.width > 0 && region.height > 0) {
+                    nonEmptyRegions.add(new Rectangle(region.x - origin.x, region.y - origin.y, region.width, region.height));
+                }
+            }
+        }
+
+        if (!nonEmptyRegions.isEmpty()) {
+            // rows between two neighbour region edges are covered by the same regions
+            TreeSet<Integer> edges = new TreeSet<>();
+            for (Rectangle region : nonEmptyRegions) {
+                edges.add(clamp(region.y, height));
+                edges.add(clamp(region.y + region.height, height));
+            }
+
+            Integer bandStart = edges.first();
+            for (Integer bandEnd : edges.tailSet(bandStart, false)) {
+                int[] spans = bandSpans(nonEmptyRegions, bandStart, bandEnd);
+                Arrays.fill(rowSpans, bandStart, bandEnd, spans);
+                bandStart = bandEnd;
+            }
+        }
+        return new IgnoreRegionIndex(rowSpans);
+    }
+
+    /**
+     * @return sorted pairs of [startX, endX) of ignored pixels in the given row relative to the origin of the index
+     */
+    int[] getSpans(int y) {
+        return rowSpans[y];
+    }
+
+    private static int[] bandSpans(List<Rectangle> regions, int bandStart, int bandEnd) {
+        List<int[]> intervals = new ArrayList<>();
+        for (Rectangle region : regions) {
+            if (region.y <= bandStart && region.y + region.height >= bandEnd) {
+                intervals.add(new int[]{region.x, region.x + region.width});
+            }
+        }
+        if (intervals.isEmpty()) {
+            return NO_SPANS;
+        }
+
+        intervals.sort((a, b) -> Integer.compare(a[0], b[0]));
+
+        int[] spans = new int[intervals.size() * 2];
+        int amount = 0;
+        for (int[] interval : intervals) {
+            if (amount > 0 && interval[0] <= spans[amount - 1]) {
+                spans[amount - 1] = Math.max(spans[amount - 1], interval[1]);
+            } else {
+                spans[amount++] = interval[0];
+                spans[amount++] = interval[1];
+            }
+        }
+        return Arrays.copyOf(spans, amount);
+    }
+
+    private static int clamp(int y, int height) {
+        return Math.min(Math.max(y, 0), height);
+    }
+}
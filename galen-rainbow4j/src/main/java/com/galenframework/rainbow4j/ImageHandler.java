@@ -18,52 +18,201 @@ package com.galenframework.rainbow4j;
 import com.galenframework.rainbow4j.filters.ImageFilter;
 
 import java.awt.*;
-import java.awt.image.BufferedImage;
+import java.awt.color.ColorSpace;
+import java.awt.image.*;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 public class ImageHandler {
+    private BufferedImage image;
     private ByteBuffer bytes;
     private int width;
     private int height;
+    private byte[] pooledArray;
 
     public final static int BLOCK_SIZE = 4;
 
-    public ImageHandler(BufferedImage image) {
-        this.bytes = readRgbModelFrom(image);
+    private static final ColorModel RGBA_COLOR_MODEL = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB),
+            true, false, Transparency.TRANSLUCENT, DataBuffer.TYPE_BYTE);
+    private static final int[] RGBA_BAND_OFFSETS = {0, 1, 2, 3};
 
-        this.width = image.getWidth();
-        this.height = image.getHeight();
+    /**
+     * Copies the pixels of the given image. Rasters of TYPE_INT_ARGB, TYPE_INT_RGB, TYPE_4BYTE_ABGR, TYPE_3BYTE_BGR
+     * and of images produced by {@link #getImage()} are converted in bulk directly from their data buffers.
+     * The pixels are stored in a buffer borrowed from {@link BufferPool}, see {@link #release()}
+     */
+    public ImageHandler(BufferedImage image) {
+        usePooledImage(image.getWidth(), image.getHeight());
+        readRgbModelFrom(image, bytes.array());
     }
 
     public ImageHandler(int width, int height) {
-        this.width = width;
-        this.height = height;
-        this.bytes = ByteBuffer.allocateDirect(width * height * BLOCK_SIZE);
+        usePooledImage(width, height);
+        Arrays.fill(pooledArray, 0, width * height * BLOCK_SIZE, (byte) 0);
+    }
+
+    private ImageHandler() {
+    }
+
+    /**
+     * Creates a handler which works directly with the pixels of the given image instead of copying them,
+     * so any filter applied to the handler also modifies the image. This is only possible for images
+     * produced by {@link #getImage()} or {@link #createRgbaImage(int, int)}, all other images are copied.
+     */
+    public static ImageHandler wrap(BufferedImage image) {
+        if (isRgbaImage(image)) {
+            ImageHandler handler = new ImageHandler();
+            handler.useRgbaImage(image);
+            return handler;
+        } else {
+            return new ImageHandler(image);
+        }
+    }
+
+    private void usePooledImage(int width, int height) {
+        int size = width * height * BLOCK_SIZE;
+        this.pooledArray = BufferPool.getDefault().borrowBytes(size);
+        WritableRaster raster = Raster.createInterleavedRaster(new DataBufferByte(pooledArray, size), width, height,
+                width * BLOCK_SIZE, BLOCK_SIZE, RGBA_BAND_OFFSETS, null);
+        useRgbaImage(new BufferedImage(RGBA_COLOR_MODEL, raster, false, null));
+    }
+
+    private void useRgbaImage(BufferedImage rgbaImage) {
+        this.image = rgbaImage;
+        this.width = rgbaImage.getWidth();
+        this.height = rgbaImage.getHeight();
+        DataBufferByte dataBuffer = (DataBufferByte) rgbaImage.getRaster().getDataBuffer();
+        // pooled arrays could be bigger than the image
+        this.bytes = ByteBuffer.wrap(dataBuffer.getData(), 0, dataBuffer.getSize()).slice();
     }
 
+    /**
+     * Returns the pixel buffer of this handler to {@link BufferPool} so that it could be reused by other handlers.
+     * Neither this handler nor any image taken from it should be used afterwards.
+     * Handlers created with {@link #wrap(BufferedImage)} around an existing image don't release anything
+     */
+    public void release() {
+        if (pooledArray != null) {
+            BufferPool.getDefault().returnBytes(pooledArray);
+            pooledArray = null;
+        }
+    }
+
+    /**
+     * Creates an image which stores its pixels in the same RGBA byte order as this handler does
+     */
+    public static BufferedImage createRgbaImage(int width, int height) {
+        WritableRaster raster = Raster.createInterleavedRaster(DataBuffer.TYPE_BYTE, width, height,
+                width * BLOCK_SIZE, BLOCK_SIZE, RGBA_BAND_OFFSETS, null);
+        return new BufferedImage(RGBA_COLOR_MODEL, raster, false, null);
+    }
+
+    /**
+     * Copies the pixels of the given image into a new image created with {@link #createRgbaImage(int, int)},
+     * so that it could later be wrapped with {@link #wrap(BufferedImage)} without copying
+     */
+    public static BufferedImage copyToRgbaImage(BufferedImage image) {
+        BufferedImage rgbaImage = createRgbaImage(image.getWidth(), image.getHeight());
+        readRgbModelFrom(image, ((DataBufferByte) rgbaImage.getRaster().getDataBuffer()).getData());
+        return rgbaImage;
+    }
+
+    /**
+     * Reads a row of pixels as packed ARGB values, the same as {@link BufferedImage#getRGB(int, int, int, int, int[], int, int)} does,
+     * but images created with {@link #createRgbaImage(int, int)} are read directly from their data buffer
+     */
+    public static void readARGBRow(BufferedImage image, int x, int y, int width, int[] row) {
+        if (isRgbaImage(image)) {
+            byte[] rgba = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+            int k = (y * image.getWidth() + x) * BLOCK_SIZE;
+            for (int i = 0; i < width; i++, k += BLOCK_SIZE) {
+                row[i] = (rgba[k + 3] & 0xff) << 24 | (rgba[k] & 0xff) << 16 | (rgba[k + 1] & 0xff) << 8 | (rgba[k + 2] & 0xff);
+            }
+        } else {
+            image.getRGB(x, y, width, 1, row, 0, width);
+        }
+    }
 
-    private static ByteBuffer readRgbModelFrom(BufferedImage image) {
+    private static boolean isRgbaImage(BufferedImage image) {
+        WritableRaster raster = image.getRaster();
+        if (image.getColorModel().equals(RGBA_COLOR_MODEL)
+                && raster.getSampleModel() instanceof PixelInterleavedSampleModel
+                && raster.getDataBuffer() instanceof DataBufferByte
+                && raster.getDataBuffer().getNumBanks() == 1
+                && raster.getDataBuffer().getOffset() == 0
+                && raster.getSampleModelTranslateX() == 0
+                && raster.getSampleModelTranslateY() == 0) {
+
+            PixelInterleavedSampleModel sampleModel = (PixelInterleavedSampleModel) raster.getSampleModel();
+            return sampleModel.getPixelStride() == BLOCK_SIZE
+                    && sampleModel.getScanlineStride() == image.getWidth() * BLOCK_SIZE
+                    && Arrays.equals(sampleModel.getBandOffsets(), RGBA_BAND_OFFSETS)
+                    && raster.getDataBuffer().getSize() == image.getWidth() * image.getHeight() * BLOCK_SIZE;
+        }
+        return false;
+    }
+
+    private static void readRgbModelFrom(BufferedImage image, byte[] rgba) {
         int w = image.getWidth();
         int h = image.getHeight();
+        WritableRaster raster = image.getRaster();
+        DataBuffer dataBuffer = raster.getDataBuffer();
+        SampleModel sampleModel = raster.getSampleModel();
+        int type = image.getType();
 
-        int[] pixels = new int[w * h];
-        image.getRGB(0, 0, w, h, pixels, 0, w);
+        if ((type == BufferedImage.TYPE_INT_ARGB || type == BufferedImage.TYPE_INT_RGB)
+                && dataBuffer instanceof DataBufferInt && sampleModel instanceof SinglePixelPackedSampleModel) {
+            int[] pixels = ((DataBufferInt) dataBuffer).getData();
+            int scanline = ((SinglePixelPackedSampleModel) sampleModel).getScanlineStride();
+            // subimages share the data buffer of their parent and are translated within it
+            int start = dataBuffer.getOffset() - raster.getSampleModelTranslateY() * scanline - raster.getSampleModelTranslateX();
+            int alphaMask = type == BufferedImage.TYPE_INT_RGB ? 0xff000000 : 0;
 
-        // use direct byte buffer to resolve heap errors here
-        ByteBuffer rgbBytes = ByteBuffer.allocateDirect(w * h * BLOCK_SIZE);
-        for (int r = 0; r < h; r++) {
-            for (int c = 0; c < w; c++) {
-                int index = r * w + c;
-                int indexRgb = r * w * BLOCK_SIZE + c * BLOCK_SIZE;
+            for (int y = 0; y < h; y++) {
+                int index = start + y * scanline;
+                int indexRgb = y * w * BLOCK_SIZE;
+                for (int x = 0; x < w; x++, index++, indexRgb += BLOCK_SIZE) {
+                    int argb = pixels[index] | alphaMask;
+                    rgba[indexRgb] = (byte) (argb >> 16);
+                    rgba[indexRgb + 1] = (byte) (argb >> 8);
+                    rgba[indexRgb + 2] = (byte) argb;
+                    rgba[indexRgb + 3] = (byte) (argb >>> 24);
+                }
+            }
+        } else if ((type == BufferedImage.TYPE_4BYTE_ABGR || type == BufferedImage.TYPE_3BYTE_BGR || isRgbaImage(image))
+                && dataBuffer instanceof DataBufferByte && sampleModel instanceof PixelInterleavedSampleModel) {
+            byte[] pixels = ((DataBufferByte) dataBuffer).getData();
+            PixelInterleavedSampleModel interleaved = (PixelInterleavedSampleModel) sampleModel;
+            int scanline = interleaved.getScanlineStride();
+            int pixelStride = interleaved.getPixelStride();
+            int[] bandOffsets = interleaved.getBandOffsets();
+            int start = dataBuffer.getOffset() - raster.getSampleModelTranslateY() * scanline - raster.getSampleModelTranslateX() * pixelStride;
+            boolean hasAlpha = bandOffsets.length > 3;
 
-                rgbBytes.put(indexRgb, (byte) ((pixels[index] >> 16) & 0xff));
-                rgbBytes.put(indexRgb + 1, (byte) ((pixels[index] >> 8) & 0xff));
-                rgbBytes.put(indexRgb + 2, (byte) (pixels[index] & 0xff));
-                rgbBytes.put(indexRgb + 3, (byte) ((pixels[index] >> 24) & 0xff));
+            for (int y = 0; y < h; y++) {
+                int index = start + y * scanline;
+                int indexRgb = y * w * BLOCK_SIZE;
+                for (int x = 0; x < w; x++, index += pixelStride, indexRgb += BLOCK_SIZE) {
+                    rgba[indexRgb] = pixels[index + bandOffsets[0]];
+                    rgba[indexRgb + 1] = pixels[index + bandOffsets[1]];
+                    rgba[indexRgb + 2] = pixels[index + bandOffsets[2]];
+                    rgba[indexRgb + 3] = hasAlpha ? pixels[index + bandOffsets[3]] : (byte) 0xff;
+                }
+            }
+        } else {
+            // any other color model is converted row by row so that only a single row is copied at a time
+            int[] pixels = new int[w];
+            for (int y = 0; y < h; y++) {
+                image.getRGB(0, y, w, 1, pixels, 0, w);
+                int indexRgb = y * w * BLOCK_SIZE;
+                for (int x = 0; x < w; x++, indexRgb += BLOCK_SIZE) {
+                    rgba[indexRgb] = (byte) (pixels[x] >> 16);
+                    rgba[indexRgb + 1] = (byte) (pixels[x] >> 8);
+                    rgba[indexRgb + 2] = (byte) pixels[x];
+                    rgba[indexRgb + 3] = (byte) (pixels[x] >>> 24);
+                }
             }
         }
-
-        return rgbBytes;
     }
 
     public Color pickColor(int x, int y) {
@@ -80,6 +229,35 @@ public class ImageHandler {
         }
     }
 
+    /**
+     * Picks the color of the pixel without allocating a {@link Color} object
+     * @return packed ARGB value of the pixel or opaque black if the pixel is outside of the image
+     */
+    public int pickARGB(int x, int y) {
+        if (x < width && y < height && x >= 0 && y >= 0) {
+            return Integer.rotateRight(bytes.getInt(y * width * BLOCK_SIZE + x * BLOCK_SIZE), 8);
+        } else {
+            return 0xff000000;
+        }
+    }
+
+    public void setARGB(int x, int y, int argb) {
+        bytes.putInt(y * width * BLOCK_SIZE + x * BLOCK_SIZE, Integer.rotateLeft(argb, 8));
+    }
+
+    /**
+     * Same as {@link #colorDiff(Color, Color)} but works with packed ARGB values
+     */
+    public static int colorDiff(int argbLeft, int argbRight) {
+        if ((argbLeft >>> 24) > 128 && (argbRight >>> 24) > 128) {
+            return Math.abs(((argbLeft >> 16) & 0xff) - ((argbRight >> 16) & 0xff))
+                    + Math.abs(((argbLeft >> 8) & 0xff) - ((argbRight >> 8) & 0xff))
+                    + Math.abs((argbLeft & 0xff) - (argbRight & 0xff));
+        } else {
+            return 0;
+        }
+    }
+
     public static long colorDiff(Color left, Color right) {
         if (left.getAlpha() > 128 && right.getAlpha() > 128) {
             return Math.abs(left.getRed() - right.getRed())
@@ -91,22 +269,11 @@ public class ImageHandler {
     }
 
 
+    /**
+     * @return image which shares its pixels with this handler, so no copy is made.
+     * Any changes made to the handler afterwards are also visible in the image
+     */
     public BufferedImage getImage() {
-        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-
-        for (int r = 0; r < height; r++) {
-            for (int c = 0; c < width; c++) {
-                int index = r * width * BLOCK_SIZE + c * BLOCK_SIZE;
-                int red = bytes.get(index) & 0xFF;
-                int green = bytes.get(index + 1) & 0xFF;
-                int blue = bytes.get(index + 2) & 0xFF;
-                int alpha = bytes.get(index + 3) & 0xFF;
-
-                int rgb = (alpha << 24) | (red << 16) | (green << 8) | blue;
-                image.setRGB(c, r, rgb);
-            }
-        }
-
         return image;
     }
 
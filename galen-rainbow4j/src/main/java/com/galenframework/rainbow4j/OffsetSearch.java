@@ -0,0 +1,225 @@
+/*******************************************************************************
+* Copyright 2016 Ivan Shubin http://galenframework.com
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*   http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+******************************************************************************/
+package com.galenframework.rainbow4j;
+
+import java.awt.*;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Searches for the offset of image A which gives the least amount of mismatching pixels.
+ * The result is the same as if all (2N+1)^2 offsets were compared at full resolution in the order of a spiral
+ * starting from zero offset. Row and column projections (sums of color channels) of both images are only used
+ * to pick a few likely offsets which are compared first. The least amount of mismatching pixels among them
+ * becomes the limit for the exhaustive spiral, so that the rest of the offsets stop comparing as soon as they exceed it.
+ */
+class OffsetSearch {
+
+    /**
+     * Amount of best shifts per axis taken from the projection estimate
+     */
+    static final int CANDIDATES_PER_AXIS = 2;
+
+    /**
+     * Radius of the neighbourhood around each estimated shift which is compared before the spiral
+     */
+    static final int REFINE_RADIUS = 1;
+
+    private final ImageHandler handlerA;
+    private final ImageHandler handlerB;
+    private final Rectangle areaA;
+    private final CompareKernel kernel;
+    private final CompareEngine engine;
+
+    OffsetSearch(ImageHandler handlerA, ImageHandler handlerB, Rectangle areaA, CompareKernel kernel, CompareEngine engine) {
+        this.handlerA = handlerA;
+        this.handlerB = handlerB;
+        this.areaA = areaA;
+        this.kernel = kernel;
+        this.engine = engine;
+    }
+
+    /**
+     * @param maxOffset maximum offset by each axis
+     * @return the best offset. Offsets with equal amount of mismatching pixels are
+     * resolved in the order of a spiral starting from zero offset
+     */
+    Point findBestOffset(int maxOffset) {
+        Point[] spiral = spiralOffsets(maxOffset);
+
+        int width = kernel.getWidth();
+        int height = kernel.getHeight();
+
+        long[] columnProjectionB = new long[width];
+        long[] rowProjectionB = new long[height];
+        for (int y = 0; y < height; y++) {
+            int yB = kernel.toAreaBY(y);
+            for (int x = 0; x < width; x++) {
+                int sum = pixelSum(handlerB, kernel.toAreaBX(x), yB);
+                columnProjectionB[x] += sum;
+                rowProjectionB[y] += sum;
+            }
+        }
+
+        Set<Integer> candidatesX = pickCandidates(columnProjectionErrors(columnProjectionB, maxOffset), maxOffset);
+        Set<Integer> candidatesY = pickCandidates(rowProjectionErrors(rowProjectionB, maxOffset), maxOffset);
+
+        // candidates are compared in the spiral order too, so none of them except the best one could win the spiral
+        boolean[] compared = new boolean[spiral.length];
+
+        long minMismatchingPixels = Long.MAX_VALUE;
+        int bestIndex = 0;
+
+        for (int i = 0; i < spiral.length && minMismatchingPixels > 0; i++) {
+            if (i == 0 || (candidatesX.contains(spiral[i].x) && candidatesY.contains(spiral[i].y))) {
+                long mismatchingPixels = engine.compare(spiral[i].x, spiral[i].y, null, minMismatchingPixels);
+                compared[i] = true;
+                if (mismatchingPixels < minMismatchingPixels) {
+                    minMismatchingPixels = mismatchingPixels;
+                    bestIndex = i;
+                }
+            }
+        }
+
+        // offsets before the best candidate win with the same amount of pixels, the ones after it only with less
+        for (int i = 0; i < spiral.length && !(minMismatchingPixels == 0 && i >= bestIndex); i++) {
+            if (!compared[i]) {
+                long limit = i < bestIndex ? minMismatchingPixels + 1 : minMismatchingPixels;
+                long mismatchingPixels = engine.compare(spiral[i].x, spiral[i].y, null, limit);
+                if (mismatchingPixels < limit) {
+                    minMismatchingPixels = mismatchingPixels;
+                    bestIndex = i;
+                }
+            }
+        }
+        return spiral[bestIndex];
+    }
+
+    /**
+     * @return all offsets within the given maximum in the order of a spiral starting from zero offset.
+     * The spiral makes one more step than the square of offsets has, so it ends with the offset (maxOffset + 1, -maxOffset)
+     */
+    static Point[] spiralOffsets(int maxOffset) {
+        int spiral_n = maxOffset * 2 + 1;
+        Point[] offsets = new Point[spiral_n * spiral_n + 1];
+
+        int offsetX = 0;
+        int offsetY = 0;
+        int spiral_dx = 0;
+        int spiral_dy = -1;
+
+        for (int spiral_i = 0; spiral_i < offsets.length; spiral_i++) {
+            if ((offsetX == offsetY) || (offsetX < 0 && offsetX == -offsetY) || (offsetX > 0 && offsetX == 1 - offsetY)){
+                int temp = spiral_dx;
+                spiral_dx = -spiral_dy;
+                spiral_dy = temp;
+            }
+            offsets[spiral_i] = new Point(offsetX, offsetY);
+
+            offsetX += spiral_dx;
+            offsetY += spiral_dy;
+        }
+        return offsets;
+    }
+
+    private Set<Integer> pickCandidates(double[] errors, int maxOffset) {
+        Integer[] shifts = new Integer[errors.length];
+        for (int i = 0; i < shifts.length; i++) {
+            shifts[i] = i;
+        }
+        Arrays.sort(shifts, (a, b) -> Double.compare(errors[a], errors[b]));
+
+        Set<Integer> candidates = new HashSet<>();
+        for (int i = 0; i < Math.min(CANDIDATES_PER_AXIS, shifts.length); i++) {
+            int shift = shifts[i] - maxOffset;
+            for (int d = -REFINE_RADIUS; d <= REFINE_RADIUS; d++) {
+                if (Math.abs(shift + d) <= maxOffset) {
+                    candidates.add(shift + d);
+                }
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Compares sums of colors in each column of both areas for every horizontal shift
+     * @return average projection error per shift, index 0 corresponds to the shift -maxOffset
+     */
+    private double[] columnProjectionErrors(long[] projectionB, int maxOffset) {
+        int width = projectionB.length;
+        int height = kernel.getHeight();
+
+        // projection of image A is taken with a margin so that it could be shifted
+        long[] projectionA = new long[width + 2 * maxOffset];
+        for (int y = areaA.y; y < areaA.y + height; y++) {
+            for (int i = 0; i < projectionA.length; i++) {
+                projectionA[i] += pixelSum(handlerA, areaA.x - maxOffset + i, y);
+            }
+        }
+        return projectionErrors(projectionA, projectionB, areaA.x - maxOffset, handlerA.getWidth(), maxOffset);
+    }
+
+    /**
+     * Compares sums of colors in each row of both areas for every vertical shift
+     * @return average projection error per shift, index 0 corresponds to the shift -maxOffset
+     */
+    private double[] rowProjectionErrors(long[] projectionB, int maxOffset) {
+        int width = kernel.getWidth();
+        int height = projectionB.length;
+
+        long[] projectionA = new long[height + 2 * maxOffset];
+        for (int i = 0; i < projectionA.length; i++) {
+            int yA = areaA.y - maxOffset + i;
+            for (int x = areaA.x; x < areaA.x + width; x++) {
+                projectionA[i] += pixelSum(handlerA, x, yA);
+            }
+        }
+        return projectionErrors(projectionA, projectionB, areaA.y - maxOffset, handlerA.getHeight(), maxOffset);
+    }
+
+    /**
+     * @param projectionA projection of image A starting at coordinate startA (could be outside of image)
+     * @param sizeA size of image A along the projection axis
+     */
+    private double[] projectionErrors(long[] projectionA, long[] projectionB, int startA, int sizeA, int maxOffset) {
+        double[] errors = new double[2 * maxOffset + 1];
+        for (int shift = 0; shift < errors.length; shift++) {
+            long error = 0;
+            int amount = 0;
+            for (int i = 0; i < projectionB.length; i++) {
+                int coordA = startA + i + shift;
+                // parts of image A which are moved outside of the image are not compared
+                if (coordA >= 0 && coordA < sizeA) {
+                    error += Math.abs(projectionA[i + shift] - projectionB[i]);
+                    amount++;
+                }
+            }
+            errors[shift] = amount > 0 ? ((double) error) / amount : Double.MAX_VALUE;
+        }
+        return errors;
+    }
+
+    private static int pixelSum(ImageHandler handler, int x, int y) {
+        if (x >= 0 && y >= 0 && x < handler.getWidth() && y < handler.getHeight()) {
+            ByteBuffer bytes = handler.getBytes();
+            int color = bytes.getInt((y * handler.getWidth() + x) * ImageHandler.BLOCK_SIZE);
+            return (color >>> 24) + ((color >> 16) & 0xff) + ((color >> 8) & 0xff);
+        }
+        return 0;
+    }
+}
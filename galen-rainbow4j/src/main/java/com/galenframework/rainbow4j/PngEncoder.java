@@ -0,0 +1,260 @@
+/*******************************************************************************
+* Copyright 2016 Ivan Shubin http://galenframework.com
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*   http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+******************************************************************************/
+package com.galenframework.rainbow4j;
+
+import java.awt.*;
+import java.awt.image.*;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes 8-bit RGBA png images row by row straight from the raster of an image, so that neither the whole image
+ * nor the written area of it is copied. Rows are written without png filters and compressed with the given level,
+ * which makes it much cheaper than ImageIO for big screenshots and comparison maps at the cost of a slightly bigger file.
+ */
+public class PngEncoder {
+
+    public static final int DEFAULT_COMPRESSION = Deflater.DEFAULT_COMPRESSION;
+
+    private static final byte[] SIGNATURE = {(byte) 137, 80, 78, 71, 13, 10, 26, 10};
+    private static final int COLOR_TYPE_RGBA = 6;
+    private static final int BIT_DEPTH = 8;
+    private static final int FILTER_NONE = 0;
+    private static final int CHUNK_SIZE = 65536;
+
+    private final int compressionLevel;
+
+    /**
+     * @param compressionLevel from 0 (no compression) to 9 (best compression) or {@link #DEFAULT_COMPRESSION}
+     */
+    public PngEncoder(int compressionLevel) {
+        if (compressionLevel != DEFAULT_COMPRESSION && (compressionLevel < 0 || compressionLevel > 9)) {
+            throw new IllegalArgumentException("Compression level should be from 0 to 9 but was " + compressionLevel);
+        }
+        this.compressionLevel = compressionLevel;
+    }
+
+    public void write(BufferedImage image, File file) throws IOException {
+        write(image, new Rectangle(0, 0, image.getWidth(), image.getHeight()), file);
+    }
+
+    public void write(BufferedImage image, Rectangle area, File file) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file), CHUNK_SIZE)) {
+            write(image, area, out);
+        }
+    }
+
+    public void write(BufferedImage image, Rectangle area, OutputStream out) throws IOException {
+        if (area.x < 0 || area.y < 0 || area.width <= 0 || area.height <= 0
+                || area.x + area.width > image.getWidth() || area.y + area.height > image.getHeight()) {
+            throw new IllegalArgumentException("Area is outside of the image: " + area);
+        }
+
+        writeImage(area.width, area.height, rowsOut -> writeRows(image, area, rowsOut), out);
+    }
+
+    /**
+     * Writes an image which is never held in memory as a whole, the rows are requested from the source one by one from top to bottom
+     */
+    public void write(int width, int height, RowSource rowSource, File file) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file), CHUNK_SIZE)) {
+            writeImage(width, height, rowsOut -> writeRows(width, height, rowSource, rowsOut), out);
+        }
+    }
+
+    private void writeImage(int width, int height, RowsWriter rowsWriter, OutputStream out) throws IOException {
+        out.write(SIGNATURE);
+        writeHeader(out, width, height);
+
+        Deflater deflater = new Deflater(compressionLevel);
+        try {
+            DeflaterOutputStream deflaterStream = new DeflaterOutputStream(new ChunkOutputStream(out, "IDAT"), deflater, CHUNK_SIZE);
+            rowsWriter.write(deflaterStream);
+            deflaterStream.close();
+        } finally {
+            deflater.end();
+        }
+
+        writeChunk(out, "IEND", new byte[0], 0);
+    }
+
+    private void writeRows(int width, int height, RowSource rowSource, OutputStream out) throws IOException {
+        byte[] row = new byte[1 + width * ImageHandler.BLOCK_SIZE];
+        int[] pixels = new int[width];
+        for (int y = 0; y < height; y++) {
+            rowSource.readRow(y, pixels);
+            writeRow(pixels, row, out);
+        }
+    }
+
+    private static void writeRow(int[] pixels, byte[] row, OutputStream out) throws IOException {
+        row[0] = FILTER_NONE;
+        for (int x = 0, k = 1; x < pixels.length; x++, k += ImageHandler.BLOCK_SIZE) {
+            row[k] = (byte) (pixels[x] >> 16);
+            row[k + 1] = (byte) (pixels[x] >> 8);
+            row[k + 2] = (byte) pixels[x];
+            row[k + 3] = (byte) (pixels[x] >>> 24);
+        }
+        out.write(row);
+    }
+
+    private void writeHeader(OutputStream out, int width, int height) throws IOException {
+        byte[] header = new byte[13];
+        putInt(header, 0, width);
+        putInt(header, 4, height);
+        header[8] = BIT_DEPTH;
+        header[9] = COLOR_TYPE_RGBA;
+        writeChunk(out, "IHDR", header, header.length);
+    }
+
+    private void writeRows(BufferedImage image, Rectangle area, OutputStream out) throws IOException {
+        byte[] row = new byte[1 + area.width * ImageHandler.BLOCK_SIZE];
+        row[0] = FILTER_NONE;
+
+        WritableRaster raster = image.getRaster();
+        if (isRgbaRaster(image)) {
+            // the pixels are already stored in png order, so rows are taken from the data buffer as they are
+            PixelInterleavedSampleModel sampleModel = (PixelInterleavedSampleModel) raster.getSampleModel();
+            byte[] data = ((DataBufferByte) raster.getDataBuffer()).getData();
+            int scanline = sampleModel.getScanlineStride();
+            int start = raster.getDataBuffer().getOffset()
+                    - raster.getSampleModelTranslateY() * scanline - raster.getSampleModelTranslateX() * ImageHandler.BLOCK_SIZE;
+
+            for (int y = area.y; y < area.y + area.height; y++) {
+                System.arraycopy(data, start + y * scanline + area.x * ImageHandler.BLOCK_SIZE, row, 1, area.width * ImageHandler.BLOCK_SIZE);
+                out.write(row);
+            }
+        } else {
+            int[] pixels = new int[area.width];
+            for (int y = area.y; y < area.y + area.height; y++) {
+                image.getRGB(area.x, y, area.width, 1, pixels, 0, area.width);
+                writeRow(pixels, row, out);
+            }
+        }
+    }
+
+    /**
+     * Checks that the image stores non-premultiplied sRGB pixels as RGBA bytes, like images of {@link ImageHandler} and their subimages do
+     */
+    private static boolean isRgbaRaster(BufferedImage image) {
+        WritableRaster raster = image.getRaster();
+        ColorModel colorModel = image.getColorModel();
+        return colorModel instanceof ComponentColorModel
+                && colorModel.getColorSpace().isCS_sRGB()
+                && colorModel.hasAlpha()
+                && !colorModel.isAlphaPremultiplied()
+                && colorModel.getTransferType() == DataBuffer.TYPE_BYTE
+                && raster.getDataBuffer() instanceof DataBufferByte
+                && raster.getDataBuffer().getNumBanks() == 1
+                && raster.getSampleModel() instanceof PixelInterleavedSampleModel
+                && ((PixelInterleavedSampleModel) raster.getSampleModel()).getPixelStride() == ImageHandler.BLOCK_SIZE
+                && Arrays.equals(((PixelInterleavedSampleModel) raster.getSampleModel()).getBandOffsets(), new int[]{0, 1, 2, 3});
+    }
+
+    private static void writeChunk(OutputStream out, String type, byte[] data, int length) throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        byte[] lengthBytes = new byte[4];
+        putInt(lengthBytes, 0, length);
+
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+        byte[] crcBytes = new byte[4];
+        putInt(crcBytes, 0, (int) crc.getValue());
+
+        out.write(lengthBytes);
+        out.write(typeBytes);
+        out.write(data, 0, length);
+        out.write(crcBytes);
+    }
+
+    private static void putInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    /**
+     * Provides rows of an image which is written with {@link #write(int, int, RowSource, File)}
+     */
+    public interface RowSource {
+        /**
+         * @param row array of the image width in which the pixels of the row should be put as packed ARGB values
+         */
+        void readRow(int y, int[] row) throws IOException;
+    }
+
+    private interface RowsWriter {
+        void write(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Splits compressed data into png chunks of the given type
+     */
+    private static class ChunkOutputStream extends OutputStream {
+        private final OutputStream out;
+        private final String type;
+        private final byte[] buffer = new byte[CHUNK_SIZE];
+        private int length = 0;
+
+        ChunkOutputStream(OutputStream out, String type) {
+            this.out = out;
+            this.type = type;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (length == buffer.length) {
+                flushChunk();
+            }
+            buffer[length++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int amount) throws IOException {
+            while (amount > 0) {
+                if (length == buffer.length) {
+                    flushChunk();
+                }
+                int copied = Math.min(amount, buffer.length - length);
+                System.arraycopy(bytes, offset, buffer, length, copied);
+                length += copied;
+                offset += copied;
+                amount -= copied;
+            }
+        }
+
+        private void flushChunk() throws IOException {
+            if (length > 0) {
+                writeChunk(out, type, buffer, length);
+                length = 0;
+            }
+        }
+
+        /**
+         * Writes the remaining data but leaves the underlying stream open for the rest of the chunks
+         */
+        @Override
+        public void close() throws IOException {
+            flushChunk();
+        }
+    }
+}
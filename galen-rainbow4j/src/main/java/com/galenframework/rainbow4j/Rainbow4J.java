@@ -18,6 +18,7 @@ package com.galenframework.rainbow4j;
 
 import com.galenframework.rainbow4j.colorscheme.ColorClassifier;
 import com.galenframework.rainbow4j.colorscheme.CustomSpectrum;
+import com.galenframework.rainbow4j.filters.FilterPipeline;
 import com.galenframework.rainbow4j.filters.ImageFilter;
 
 import javax.imageio.ImageIO;
@@ -27,11 +28,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Collectors;
 
 public class Rainbow4J {
 
@@ -73,154 +70,75 @@ public class Rainbow4J {
             throw new RuntimeException("Specified area is outside for secondary image");
         }
 
-        int imageAWidth = imageA.getWidth();
-        int imageAHeight = imageA.getHeight();
+        // Filters only need the pixels which are going to be compared, so instead of the whole image
+        // only this region is copied. Image A also needs a margin for the offset analysis
+        Rectangle regionA = options.getOriginalFilters() == null || options.getOriginalFilters().isEmpty()
+                ? new Rectangle(0, 0, imageA.getWidth(), imageA.getHeight())
+                : workingRegion(imageA, areaA, offsetMargin(options.getAnalyzeOffset()), areaA.width, areaA.height);
+        Rectangle regionB = options.getSampleFilters() == null || options.getSampleFilters().isEmpty()
+                ? new Rectangle(0, 0, imageB.getWidth(), imageB.getHeight())
+                : workingRegion(imageB, areaB, 0, options.isStretchToFit() ? areaB.width : areaA.width,
+                                                     options.isStretchToFit() ? areaB.height : areaA.height);
 
-        int Cax = areaA.x;
-        int Cay = areaA.y;
+        ImageHandler handlerA = createHandler(imageA, regionA, options.getOriginalFilters());
+        ImageHandler handlerB = createHandler(imageB, regionB, options.getSampleFilters());
 
-        int Cbx = areaB.x;
-        int Cby = areaB.y;
+        try {
+            Rectangle localAreaA = new Rectangle(areaA.x - regionA.x, areaA.y - regionA.y, areaA.width, areaA.height);
+            Rectangle localAreaB = new Rectangle(areaB.x - regionB.x, areaB.y - regionB.y, areaB.width, areaB.height);
 
-        int Wa = areaA.width;
-        int Ha = areaA.height;
+            applyAllFilters(imageA, imageB, localAreaA, localAreaB, options, handlerA, handlerB);
 
-        int Wb = areaB.width;
-        int Hb = areaB.height;
+            IgnoreRegionIndex ignoreRegions = IgnoreRegionIndex.build(options.getIgnoreRegions(), regionA.getLocation(), handlerA.getHeight());
+            CompareKernel kernel = new CompareKernel(handlerA, handlerB, localAreaA, localAreaB, options, ignoreRegions);
+            CompareEngine engine = new CompareEngine(kernel, options);
 
-        double Kx = ((double)Wb) / ((double)Wa);
-        double Ky = ((double)Hb) / ((double)Ha);
+            int resultingOffsetX = 0;
+            int resultingOffsetY = 0;
 
-
-        ImageHandler handlerA = new ImageHandler(imageA);
-        ImageHandler handlerB = new ImageHandler(imageB);
-
-
-        applyAllFilters(areaA, areaB, options, handlerA, handlerB);
-
-        int tolerance = options.getTolerance();
-
-        long minMismatchingPixels = Integer.MAX_VALUE;
-
-        ImageHandler resultingMapHandler = null;
-
-
-        int resultingOffsetX = 0;
-        int resultingOffsetY = 0;
-
-
-        // Here it moves within a spiral for better performance when analyzing a large offset
-        int offsetX = 0;
-        int offsetY = 0;
-        int spiral_dx = 0;
-        int spiral_dy = -1;
-
-        int spiral_n = 0;
-
-        if (options.getAnalyzeOffset() > 0) {
-            spiral_n = options.getAnalyzeOffset() * 2 + 1;
-        }
-        int max_spiral = spiral_n * spiral_n;
-
-        for (int spiral_i = 0; spiral_i <= max_spiral; spiral_i++) {
-
-            if ((offsetX == offsetY) || (offsetX < 0 && offsetX == -offsetY) || (offsetX > 0 && offsetX == 1 - offsetY)){
-                int temp = spiral_dx;
-                spiral_dx = -spiral_dy;
-                spiral_dy = temp;
+            if (options.getAnalyzeOffset() > 0) {
+                Point offset = new OffsetSearch(handlerA, handlerB, localAreaA, kernel, engine).findBestOffset(options.getAnalyzeOffset());
+                resultingOffsetX = offset.x;
+                resultingOffsetY = offset.y;
             }
 
-            ImageHandler mapHandler = new ImageHandler(areaA.width, areaA.height);
-            long mismatchingPixels = 0;
-            int x = 0, y = 0;
-
-            while(y < Ha && minMismatchingPixels > 0) {
-                while (x < Wa && mismatchingPixels < minMismatchingPixels) {
-                    int xA = x + Cax + offsetX;
-                    int yA = y + Cay + offsetY;
-
-                    if (xA >= 0 && xA < imageAWidth && yA >= 0 && yA < imageAHeight ) {
-                        if (!shouldPixelBeIgnored(xA, yA, options)) {
-                            Color cA = handlerA.pickColor(xA, yA);
-
-                            int xB, yB;
-
-                            if (options.isStretchToFit()) {
-                                xB = (int) Math.round((((double) x) * Kx) + Cbx);
-                                yB = (int) Math.round(((double) y) * Ky + Cby);
-                                xB = Math.min(xB, Cbx + Wb - 1);
-                                yB = Math.min(yB, Cby + Hb - 1);
-                            } else {
-                                xB = x + Cbx;
-                                yB = y + Cby;
-                            }
-
-                            Color cB = handlerB.pickColor(xB, yB);
-
-                            long colorError = ImageHandler.colorDiff(cA, cB);
-                            if (colorError > tolerance) {
-
-                                Color color = Color.red;
-
-                                int diff = (int) (colorError - tolerance);
-                                if (diff > 30 && diff < 80) {
-                                    color = Color.yellow;
-                                } else if (diff <= 30) {
-                                    color = Color.green;
-                                }
-                                mapHandler.setRGBA(x, y, color.getRed(), color.getGreen(), color.getBlue(), 255);
-
-                                mismatchingPixels += 1;
-                            } else {
-                                mapHandler.setRGBA(x, y, 0, 0, 0, 255);
-                            }
-                        } else {
-                            mapHandler.setRGBA(x, y, 0, 0, 0, 160);
-                        }
-
-                    } else {
-                        mapHandler.setRGBA(x, y, 0, 0, 0, 255);
-                    }
-
-                    x += 1;
+            if (isThresholdMode(options)) {
+                long mismatchingPixels = engine.countWithinBudget(resultingOffsetX, resultingOffsetY, options.getMismatchBudget());
+                if (mismatchingPixels <= options.getMismatchBudget()) {
+                    // images are within the budget so there is no need to build the comparison map and filtered images
+                    ImageCompareResult result = new ImageCompareResult();
+                    result.setPercentage(100.0 * mismatchingPixels / (areaA.width * areaA.height));
+                    result.setTotalPixels(mismatchingPixels);
+                    result.setOffsetX(resultingOffsetX);
+                    result.setOffsetY(resultingOffsetY);
+                    return result;
                 }
-                y += 1;
-                x = 0;
             }
 
-            if (mismatchingPixels < minMismatchingPixels) {
-                minMismatchingPixels = mismatchingPixels;
-                resultingOffsetX = offsetX;
-                resultingOffsetY = offsetY;
-                resultingMapHandler = mapHandler;
-            }
-
-            offsetX += spiral_dx;
-            offsetY += spiral_dy;
-        }
+            // The comparison map is only built once for the resulting offset
+            ImageHandler resultingMapHandler = new ImageHandler(areaA.width, areaA.height);
+            engine.compare(resultingOffsetX, resultingOffsetY, resultingMapHandler, Long.MAX_VALUE);
 
+            applyFilters(resultingMapHandler, options.getMapFilters(), new Rectangle(0, 0, resultingMapHandler.getWidth(), resultingMapHandler.getHeight()), null);
 
-        applyFilters(resultingMapHandler, options.getMapFilters(), new Rectangle(0, 0, resultingMapHandler.getWidth(), resultingMapHandler.getHeight()));
+            ImageCompareResult result = analyzeComparisonMap(resultingMapHandler);
+            result.setOffsetX(resultingOffsetX);
+            result.setOffsetY(resultingOffsetY);
 
-        ImageCompareResult result = analyzeComparisonMap(resultingMapHandler);
-        result.setOffsetX(resultingOffsetX);
-        result.setOffsetY(resultingOffsetY);
+            // the filtered images are copied out of the handlers, so that their buffers could be reused
+            result.setOriginalFilteredImage(ImageHandler.copyToRgbaImage(handlerA.getImage().getSubimage(localAreaA.x, localAreaA.y, areaA.width, areaA.height)));
+            result.setSampleFilteredImage(ImageHandler.copyToRgbaImage(handlerB.getImage().getSubimage(localAreaB.x, localAreaB.y, areaB.width, areaB.height)));
 
-        result.setOriginalFilteredImage(handlerA.getImage().getSubimage(areaA.x, areaA.y, areaA.width, areaA.height));
-        result.setSampleFilteredImage(handlerB.getImage().getSubimage(areaB.x, areaB.y, areaB.width, areaB.height));
-
-        return result;
+            return result;
+        } finally {
+            handlerA.release();
+            handlerB.release();
+        }
     }
 
-    private static boolean shouldPixelBeIgnored(int x, int y, ComparisonOptions options) {
-        if (options != null && options.getIgnoreRegions() != null) {
-            for (Rectangle rectangle : options.getIgnoreRegions()) {
-                if (rectangle.contains(x, y)) {
-                    return true;
-                }
-            }
-        }
-        return false;
+    private static boolean isThresholdMode(ComparisonOptions options) {
+        return options.getMismatchBudget() != null
+                && (options.getMapFilters() == null || options.getMapFilters().isEmpty());
     }
 
     private static ImageCompareResult analyzeComparisonMap(ImageHandler mapHandler) {
@@ -229,11 +147,13 @@ public class Rainbow4J {
         long totalMismatchingPixels = 0;
 
         ByteBuffer bytes = mapHandler.getBytes();
+        byte[] data = bytes.array();
+        int end = bytes.arrayOffset() + bytes.capacity();
 
-        for (int k = 0; k < bytes.capacity() - ImageHandler.BLOCK_SIZE; k += ImageHandler.BLOCK_SIZE) {
-            if (((int)bytes.get(k) &0xff) > 0 || ((int)bytes.get(k + 1) &0xff) > 0 || ((int)bytes.get(k + 2) &0xff) > 0) {
-                totalMismatchingPixels++;
-            }
+        // counting pixels which are not black without branching so that the loop could be unrolled
+        for (int k = bytes.arrayOffset(); k < end; k += ImageHandler.BLOCK_SIZE) {
+            int rgb = data[k] | data[k + 1] | data[k + 2];
+            totalMismatchingPixels += (rgb | -rgb) >>> 31;
         }
 
         double totalPixels = (mapHandler.getWidth() * mapHandler.getHeight());
@@ -243,16 +163,45 @@ public class Rainbow4J {
         return result;
     }
 
-    private static void applyAllFilters(Rectangle areaA, Rectangle areaB, ComparisonOptions options, ImageHandler handlerA, ImageHandler handlerB) {
-        applyFilters(handlerA, options.getOriginalFilters(), areaA);
-        applyFilters(handlerB, options.getSampleFilters(), areaB);
+    /**
+     * Images are only copied in case they are going to be modified by filters
+     */
+    private static ImageHandler createHandler(BufferedImage image, Rectangle region, List<ImageFilter> filters) {
+        if (filters == null || filters.isEmpty()) {
+            return ImageHandler.wrap(image);
+        } else {
+            return new ImageHandler(image.getSubimage(region.x, region.y, region.width, region.height));
+        }
     }
 
-    private static void applyFilters(ImageHandler handler, List<ImageFilter> filters, Rectangle area) {
-        if (filters != null) {
-            for (ImageFilter filter : filters) {
-                handler.applyFilter(filter, area);
-            }
+    /**
+     * The offset search goes one step further than the analyzed offset, see {@link OffsetSearch#spiralOffsets(int)}
+     */
+    private static int offsetMargin(int analyzeOffset) {
+        return analyzeOffset > 0 ? analyzeOffset + 1 : 0;
+    }
+
+    /**
+     * @param margin amount of pixels around the area which are also read by the comparison
+     * @param comparedWidth width of the area in this image which is read by the comparison
+     * @param comparedHeight height of the area in this image which is read by the comparison
+     * @return region of the image which contains all pixels that could be read by the comparison
+     */
+    private static Rectangle workingRegion(BufferedImage image, Rectangle area, int margin, int comparedWidth, int comparedHeight) {
+        Rectangle region = new Rectangle(area.x - margin, area.y - margin,
+                Math.max(area.width, comparedWidth) + 2 * margin, Math.max(area.height, comparedHeight) + 2 * margin);
+        return region.intersection(new Rectangle(0, 0, image.getWidth(), image.getHeight()));
+    }
+
+    private static void applyAllFilters(BufferedImage imageA, BufferedImage imageB, Rectangle areaA, Rectangle areaB,
+                                        ComparisonOptions options, ImageHandler handlerA, ImageHandler handlerB) {
+        applyFilters(handlerA, options.getOriginalFilters(), areaA, new Dimension(imageA.getWidth(), imageA.getHeight()));
+        applyFilters(handlerB, options.getSampleFilters(), areaB, new Dimension(imageB.getWidth(), imageB.getHeight()));
+    }
+
+    private static void applyFilters(ImageHandler handler, List<ImageFilter> filters, Rectangle area, Dimension imageSize) {
+        if (filters != null && !filters.isEmpty()) {
+            handler.applyFilter(new FilterPipeline(filters, imageSize), area);
         }
     }
 
@@ -268,42 +217,43 @@ public class Rainbow4J {
         if (precision < 8) throw new IllegalArgumentException("Color size should not be less then 8");
         if (precision > 256) throw new IllegalArgumentException("Color size should not be bigger then 256");
 
-        int spectrum[][][] = new int[precision][precision][precision];
-
         int width = image.getWidth();
         int height = image.getHeight();
 
-        int[] a = new int[width * height];
-
-        image.getRGB(0, 0, width, height, a, 0, width);
-
-        int spectrumWidth = width;
-        int spectrumHeight = height;
-
         if (area == null) {
             area = new Rectangle(0, 0, width, height);
         }
-        else {
-            spectrumWidth = area.width;
-            spectrumHeight = area.height;
-        }
 
-        int k = 0;
-        int r,g,b;
+        ColorHistogram histogram = new ColorHistogram();
+        int[] row = new int[area.width];
 
         for (int y = area.y; y < area.y + area.height; y++) {
-            for (int x = area.x; x < area.x + area.width; x++) {
-                k = y * width + x;
-
-                r = ((a[k] >> 16) & 0xff) * precision / 256;
-                g = ((a[k] >> 8) & 0xff) * precision / 256;
-                b = ((a[k]) & 0xff) * precision / 256;
-
-                spectrum[Math.min(r, precision - 1)][Math.min(g, precision - 1)][Math.min(b, precision - 1)] += 1;
+            ImageHandler.readARGBRow(image, area.x, y, area.width, row);
+
+            // neighbour pixels often have the same color, so they are counted in runs
+            int runBucket = -1;
+            int runLength = 0;
+            for (int x = 0; x < area.width; x++) {
+                int r = Math.min(((row[x] >> 16) & 0xff) * precision / 256, precision - 1);
+                int g = Math.min(((row[x] >> 8) & 0xff) * precision / 256, precision - 1);
+                int b = Math.min((row[x] & 0xff) * precision / 256, precision - 1);
+                int bucket = (r * precision + g) * precision + b;
+
+                if (bucket != runBucket) {
+                    if (runLength > 0) {
+                        histogram.add(runBucket, runLength);
+                    }
+                    runBucket = bucket;
+                    runLength = 0;
+                }
+                runLength++;
+            }
+            if (runLength > 0) {
+                histogram.add(runBucket, runLength);
             }
         }
 
-        return new Spectrum(spectrum, spectrumWidth, spectrumHeight);
+        return new Spectrum(histogram, precision, area.width * area.height);
     }
 
     public static CustomSpectrum readCustomSpectrum(BufferedImage image, List<ColorClassifier> colorClassifiers) {
@@ -317,53 +267,11 @@ public class Rainbow4J {
     public static CustomSpectrum readCustomSpectrum(BufferedImage image, List<ColorClassifier> colorClassifiers, Rectangle area, int colorTolerance) {
         int maxColorSquareDistance = colorTolerance*colorTolerance*3;
 
-        Map<String, AtomicInteger> colorPickers = new HashMap<>();
-        for (ColorClassifier classifier : colorClassifiers) {
-            colorPickers.put(classifier.getName(), new AtomicInteger(0));
-        }
-
-        int amountOfUnmatchedColor = 0;
-
-        int width = image.getWidth();
-        int height = image.getHeight();
-
-        int[] a = new int[width * height];
-
-        image.getRGB(0, 0, width, height, a, 0, width);
-
         if (area == null) {
-            area = new Rectangle(0, 0, width, height);
-        }
-
-        int k = 0;
-        int r,g,b;
-
-        for (int y = area.y; y < area.y + area.height; y++) {
-            for (int x = area.x; x < area.x + area.width; x++) {
-                k = y * width + x;
-
-                r = ((a[k] >> 16) & 0xff);
-                g = ((a[k] >> 8) & 0xff);
-                b = ((a[k]) & 0xff);
-
-                boolean colorMatched = false;
-                for (ColorClassifier classifier : colorClassifiers) {
-                    if (classifier.holdsColor(r, g, b, maxColorSquareDistance)) {
-                        colorPickers.get(classifier.getName()).incrementAndGet();
-                        colorMatched = true;
-                    }
-                }
-
-                if (!colorMatched) {
-                    amountOfUnmatchedColor += 1;
-                }
-            }
+            area = new Rectangle(0, 0, image.getWidth(), image.getHeight());
         }
 
-        int totalPixels = area.height * area.width;
-        Map<String, Integer> collectedColors = colorPickers.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().get()));
-
-        return new CustomSpectrum(collectedColors, amountOfUnmatchedColor, totalPixels);
+        return new CustomSpectrumReader(colorClassifiers, maxColorSquareDistance).read(image, area);
     }
 
     public static BufferedImage loadImage(String filePath) throws IOException{
@@ -375,7 +283,23 @@ public class Rainbow4J {
     }
 
     public static void saveImage(BufferedImage image, File file) throws IOException {
-        ImageIO.write(image, "png", file);
+        new PngEncoder(PngEncoder.DEFAULT_COMPRESSION).write(image, file);
+    }
+
+    /**
+     * Saves the image as png with the given compression level
+     * @param compressionLevel from 0 (fastest) to 9 (smallest file)
+     */
+    public static void saveImage(BufferedImage image, File file, int compressionLevel) throws IOException {
+        new PngEncoder(compressionLevel).write(image, file);
+    }
+
+    /**
+     * Saves only the given area of the image as png without making a copy of it
+     * @param compressionLevel from 0 (fastest) to 9 (smallest file)
+     */
+    public static void saveImage(BufferedImage image, Rectangle area, File file, int compressionLevel) throws IOException {
+        new PngEncoder(compressionLevel).write(image, area, file);
     }
 
 }
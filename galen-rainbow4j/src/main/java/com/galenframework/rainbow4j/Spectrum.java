@@ -21,16 +21,64 @@ import java.awt.Color;
 import java.util.LinkedList;
 import java.util.List;
 
+/**
+ * Histogram of colors in an image. Colors are grouped into precision^3 buckets.
+ * Images usually contain only a small part of all possible buckets, so in that case
+ * only non-empty buckets are kept in a sorted array. Otherwise, when the amount of buckets is small enough,
+ * all of them are kept together with a table of 3D prefix sums, so that any range query takes 8 lookups.
+ */
 public class Spectrum {
 
-    private final int[][][] data;
-    private int pixelsAmount;
-    private int precision;
+    /**
+     * Maximum amount of buckets for which all of them are kept
+     */
+    static final int MAX_DENSE_BUCKETS = 1 << 18;
+
+    /**
+     * Non-empty buckets are kept sparse when they take less than this part of all buckets
+     */
+    static final int SPARSE_RATIO = 16;
+
+    private final int pixelsAmount;
+    private final int precision;
+
+    // sparse histogram: sorted non-empty buckets and amount of pixels in all buckets before each of them
+    private final int[] buckets;
+    private final long[] pixelsBefore;
+
+    // dense histogram: amount of pixels in each bucket and 3D prefix sums with a leading zero layer on each axis
+    private final int[] data;
+    private final long[] prefixSums;
 
     public Spectrum(int[][][] data, int width, int height) {
-        this.precision = data.length;
-        this.data = data;
-        this.pixelsAmount = width * height;
+        this(toHistogram(data), data.length, width * height);
+    }
+
+    Spectrum(ColorHistogram histogram, int precision, int pixelsAmount) {
+        this.precision = precision;
+        this.pixelsAmount = pixelsAmount;
+
+        long[] entries = histogram.toSortedEntries();
+        int bucketsAmount = precision * precision * precision;
+
+        if (bucketsAmount > MAX_DENSE_BUCKETS || ((long) entries.length) * SPARSE_RATIO < bucketsAmount) {
+            this.buckets = new int[entries.length];
+            this.pixelsBefore = new long[entries.length + 1];
+            for (int i = 0; i < entries.length; i++) {
+                buckets[i] = (int) (entries[i] >>> 32);
+                pixelsBefore[i + 1] = pixelsBefore[i] + (int) entries[i];
+            }
+            this.data = null;
+            this.prefixSums = null;
+        } else {
+            this.data = new int[bucketsAmount];
+            for (long entry : entries) {
+                data[(int) (entry >>> 32)] = (int) entry;
+            }
+            this.prefixSums = buildPrefixSums(data, precision);
+            this.buckets = null;
+            this.pixelsBefore = null;
+        }
     }
 
     /**
@@ -42,9 +90,6 @@ public class Spectrum {
      * @return
      */
     public double getPercentage(int red, int green, int blue, int range) {
-
-        long counter = 0;
-        
         int cr = Math.min(red * precision / 256, precision - 1);
         int cg = Math.min(green * precision / 256, precision - 1);
         int cb = Math.min(blue * precision / 256, precision - 1);
@@ -55,28 +100,70 @@ public class Spectrum {
         int rRange[] = new int[]{Math.max(0, cr - crange), Math.min(cr + crange, precision - 1)};
         int gRange[] = new int[]{Math.max(0, cg - crange), Math.min(cg + crange, precision - 1)};
         int bRange[] = new int[]{Math.max(0, cb - crange), Math.min(cb + crange, precision - 1)};
-        
+
+        long counter;
+        if (data != null) {
+            counter = denseSum(rRange, gRange, bRange);
+        } else {
+            counter = sparseSum(rRange, gRange, bRange);
+        }
+
+        return 100.d * counter/pixelsAmount;
+    }
+
+    private long denseSum(int[] rRange, int[] gRange, int[] bRange) {
+        int r0 = rRange[0], r1 = rRange[1] + 1;
+        int g0 = gRange[0], g1 = gRange[1] + 1;
+        int b0 = bRange[0], b1 = bRange[1] + 1;
+
+        return prefixSum(r1, g1, b1) - prefixSum(r0, g1, b1) - prefixSum(r1, g0, b1) - prefixSum(r1, g1, b0)
+                + prefixSum(r0, g0, b1) + prefixSum(r0, g1, b0) + prefixSum(r1, g0, b0)
+                - prefixSum(r0, g0, b0);
+    }
+
+    /**
+     * @return amount of pixels in all buckets with red below r, green below g and blue below b
+     */
+    private long prefixSum(int r, int g, int b) {
+        int side = precision + 1;
+        return prefixSums[(r * side + g) * side + b];
+    }
+
+    private long sparseSum(int[] rRange, int[] gRange, int[] bRange) {
+        long counter = 0;
         for (int ir = rRange[0]; ir <= rRange[1]; ir++) {
             for (int ig = gRange[0]; ig <= gRange[1]; ig++) {
-                for (int ib = bRange[0]; ib <= bRange[1]; ib++) {
-                    counter += data[ir][ig][ib];
-                }
+                // buckets with the same red and green are stored next to each other ordered by blue
+                int row = (ir * precision + ig) * precision;
+                int from = lowerBound(row + bRange[0]);
+                int to = lowerBound(row + bRange[1] + 1);
+                counter += pixelsBefore[to] - pixelsBefore[from];
             }
         }
+        return counter;
+    }
 
-        return 100.d * counter/pixelsAmount;
+    /**
+     * @return index of the first non-empty bucket which is not less than the given one
+     */
+    private int lowerBound(int bucket) {
+        int low = 0;
+        int high = buckets.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (buckets[middle] < bucket) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
     }
     
     public void printColors() {
-        for (int r = 0; r<precision; r++) {
-            for (int g = 0; g<precision; g++) {
-                for (int b = 0; b<precision; b++) {
-                    if (data[r][g][b] > 0) {
-                        System.out.println(String.format("(%d, %d, %d) = %d", r, g, b, data[r][g][b]));
-                    }
-                }
-            }
-        }
+        forEachNonEmptyBucket((r, g, b, amount) ->
+            System.out.println(String.format("(%d, %d, %d) = %d", r, g, b, amount))
+        );
     }
 
     public int getPrecision() {
@@ -84,20 +171,91 @@ public class Spectrum {
     }
 
     public List<ColorDistribution> getColorDistribution(int minPercentage) {
-        double usage = 0;
-        
         List<ColorDistribution> colors = new LinkedList<>();
-        for (int r = 0; r<precision; r++) {
-            for (int g = 0; g<precision; g++) {
-                for (int b = 0; b<precision; b++) {
-                    usage = data[r][g][b] * 100 / pixelsAmount;
-                    
-                    if (usage >= minPercentage) {
-                        colors.add(new ColorDistribution(new Color(r, g, b), usage));
+        if (minPercentage > 0) {
+            // empty buckets are never used enough
+            forEachNonEmptyBucket((r, g, b, amount) -> {
+                double usage = amount * 100 / pixelsAmount;
+                if (usage >= minPercentage) {
+                    colors.add(new ColorDistribution(new Color(r, g, b), usage));
+                }
+            });
+        } else {
+            for (int r = 0; r<precision; r++) {
+                for (int g = 0; g<precision; g++) {
+                    for (int b = 0; b<precision; b++) {
+                        double usage = amountInBucket(r, g, b) * 100 / pixelsAmount;
+
+                        if (usage >= minPercentage) {
+                            colors.add(new ColorDistribution(new Color(r, g, b), usage));
+                        }
                     }
                 }
             }
         }
         return colors;
     }
+
+    private int amountInBucket(int r, int g, int b) {
+        int bucket = (r * precision + g) * precision + b;
+        if (data != null) {
+            return data[bucket];
+        }
+        int index = lowerBound(bucket);
+        if (index < buckets.length && buckets[index] == bucket) {
+            return (int) (pixelsBefore[index + 1] - pixelsBefore[index]);
+        }
+        return 0;
+    }
+
+    private interface BucketConsumer {
+        void accept(int r, int g, int b, int amount);
+    }
+
+    private void forEachNonEmptyBucket(BucketConsumer consumer) {
+        if (data != null) {
+            for (int bucket = 0; bucket < data.length; bucket++) {
+                if (data[bucket] > 0) {
+                    consumer.accept(bucket / (precision * precision), (bucket / precision) % precision, bucket % precision, data[bucket]);
+                }
+            }
+        } else {
+            for (int i = 0; i < buckets.length; i++) {
+                int bucket = buckets[i];
+                consumer.accept(bucket / (precision * precision), (bucket / precision) % precision, bucket % precision,
+                        (int) (pixelsBefore[i + 1] - pixelsBefore[i]));
+            }
+        }
+    }
+
+    private static ColorHistogram toHistogram(int[][][] data) {
+        int precision = data.length;
+        ColorHistogram histogram = new ColorHistogram();
+        for (int r = 0; r < precision; r++) {
+            for (int g = 0; g < precision; g++) {
+                for (int b = 0; b < precision; b++) {
+                    if (data[r][g][b] != 0) {
+                        histogram.add((r * precision + g) * precision + b, data[r][g][b]);
+                    }
+                }
+            }
+        }
+        return histogram;
+    }
+
+    private static long[] buildPrefixSums(int[] data, int precision) {
+        int side = precision + 1;
+        long[] sums = new long[side * side * side];
+        for (int r = 1; r < side; r++) {
+            for (int g = 1; g < side; g++) {
+                long rowSum = 0;
+                for (int b = 1; b < side; b++) {
+                    rowSum += data[((r - 1) * precision + g - 1) * precision + b - 1];
+                    int index = (r * side + g) * side + b;
+                    sums[index] = rowSum + sums[index - side] + sums[index - side * side] - sums[index - side - side * side];
+                }
+            }
+        }
+        return sums;
+    }
 }
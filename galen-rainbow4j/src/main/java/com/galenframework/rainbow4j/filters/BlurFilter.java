@@ -15,7 +15,6 @@
 ******************************************************************************/
 package com.galenframework.rainbow4j.filters;
 
-import com.galenframework.rainbow4j.BufferUtils;
 import com.galenframework.rainbow4j.ImageHandler;
 
 import java.awt.*;
@@ -24,7 +23,7 @@ import java.nio.ByteBuffer;
 /**
  * Created by ishubin on 2014/09/14.
  */
-public class BlurFilter implements ImageFilter {
+public class BlurFilter extends WindowFilter {
     private int radius;
 
     public BlurFilter(int radius) {
@@ -40,52 +39,26 @@ public class BlurFilter implements ImageFilter {
     }
 
     @Override
-    public void apply(ByteBuffer bytes, int width, int height, Rectangle area) {
+    void apply(ByteBuffer bytes, int width, int height, Rectangle area, PyramidWindow window, Dimension imageSize) {
         if (area.width + area.x > width || area.height + area.y > height) {
             throw new RuntimeException("Specified area is outside of image");
         }
 
         if (radius > 0) {
-            ByteBuffer copyBytes = BufferUtils.clone(bytes);
-
-            for (int yc = area.y; yc < area.y + area.height; yc++) {
-                for (int xc = area.x; xc < area.x + area.width; xc++) {
-
-                    int startY = Math.max(yc - radius, area.y);
-                    int startX = Math.max(xc - radius, area.x);
-                    int endY = Math.min(yc + radius, area.height + area.y - 1);
-                    int endX = Math.min(xc + radius, area.width + area.x - 1);
-
-                    int ar = 0, ag = 0, ab = 0;
-                    double sumWeight = 0;
-                    double distance;
-                    double dWeight;
-
-                    for (int y = startY; y <= endY; y++) {
-                        for (int x = startX; x <= endX; x++) {
-                            int k = y * width * ImageHandler.BLOCK_SIZE + x * ImageHandler.BLOCK_SIZE;
-                            int r = copyBytes.get(k) & 0xff;
-                            int g = copyBytes.get(k + 1) & 0xff;
-                            int b = copyBytes.get(k + 2) & 0xff;
-
-                            distance = Math.max(Math.abs(x - xc), Math.abs(y - yc));
-                            dWeight = 1 - distance/(radius + 1);
-                            sumWeight += dWeight;
-
-                            ar += r * dWeight;
-                            ag += g * dWeight;
-                            ab += b * dWeight;
-                        }
+            // the weights of the window are the same as in the classic pyramid blur,
+            // but the sums are calculated in constant time per pixel regardless of the radius
+            window.process(bytes, width, area, radius, (y, sums) -> {
+                int k = (y * width + area.x) * ImageHandler.BLOCK_SIZE;
+                for (int x = 0; x < area.width; x++, k += ImageHandler.BLOCK_SIZE) {
+                    int s = x * PyramidWindow.CHANNELS;
+                    // the window is limited by the area
+                    long sumWeight = sums[s + PyramidWindow.WEIGHT];
+                    for (int c = 0; c < 3; c++) {
+                        double blurred = (double) sums[s + c] / sumWeight - PyramidWindow.loss(sums[s + PyramidWindow.LOSS + c], sumWeight, radius);
+                        bytes.put(k + c, (byte) Math.max(0, (int) Math.floor(blurred)));
                     }
-
-
-                    int k = yc * width * ImageHandler.BLOCK_SIZE + xc * ImageHandler.BLOCK_SIZE;
-                    bytes.put(k, (byte) (ar / sumWeight));
-                    bytes.put(k + 1, (byte) (ag / sumWeight));
-                    bytes.put(k + 2, (byte) (ab / sumWeight));
                 }
-            }
-
+            });
         }
     }
 }
@@ -15,12 +15,10 @@
 ******************************************************************************/
 package com.galenframework.rainbow4j.filters;
 
-import com.galenframework.rainbow4j.ImageHandler;
-
 import java.awt.*;
 import java.nio.ByteBuffer;
 
-public class ContrastFilter implements  ImageFilter{
+public class ContrastFilter implements PointFilter {
     private int level;
 
     public ContrastFilter(int level) {
@@ -37,20 +35,25 @@ public class ContrastFilter implements  ImageFilter{
 
     @Override
     public void apply(ByteBuffer bytes, int width, int height, Rectangle area) {
+        FusedPointFilter.apply(bytes, width, area, prepare(area));
+    }
+
+    @Override
+    public PixelTransform prepare(Rectangle area) {
         if (level > 259) {
             level = 258;
         }
         int factor = 259*(level + 255) / (255*(259 - level));
 
-        for (int y = area.y; y < area.y + area.height; y++) {
-            for (int x = area.x; x < area.x + area.width; x++) {
-                int k = y * width * ImageHandler.BLOCK_SIZE + x * ImageHandler.BLOCK_SIZE;
-
-                bytes.put(k, contrast(bytes.get(k), factor));
-                bytes.put(k + 1, contrast(bytes.get(k + 1), factor));
-                bytes.put(k + 2, contrast(bytes.get(k + 2), factor));
-            }
+        int[] table = new int[256];
+        for (int color = 0; color < 256; color++) {
+            table[color] = contrast((byte) color, factor) & 0xff;
         }
+
+        return (x, y, rgba) -> (table[rgba >>> 24] << 24)
+                | (table[(rgba >> 16) & 0xff] << 16)
+                | (table[(rgba >> 8) & 0xff] << 8)
+                | (rgba & 0xff);
     }
 
     private byte contrast(byte color, int factor) {
@@ -15,13 +15,12 @@
 ******************************************************************************/
 package com.galenframework.rainbow4j.filters;
 
-import com.galenframework.rainbow4j.BufferUtils;
 import com.galenframework.rainbow4j.ImageHandler;
 
 import java.awt.*;
 import java.nio.ByteBuffer;
 
-public class DenoiseFilter implements ImageFilter {
+public class DenoiseFilter extends WindowFilter {
     private int radius;
 
     public DenoiseFilter(int radius) {
@@ -29,61 +28,24 @@ public class DenoiseFilter implements ImageFilter {
     }
 
     @Override
-    public void apply(ByteBuffer bytes, int width, int height, Rectangle area) {
-        radius = Math.min(radius, Math.min(width / 2, height / 2));
+    void apply(ByteBuffer bytes, int width, int height, Rectangle area, PyramidWindow window, Dimension imageSize) {
+        // the radius is limited by the whole image even if only a region of it was copied into the buffer
+        int radius = Math.min(this.radius, Math.min(imageSize.width / 2, imageSize.height / 2));
 
         int normalThreshold = 100;
 
         if (radius > 0) {
+            // pixels outside of the area are counted as black, so the sum of weights is always the same
+            long sumWeight = PyramidWindow.fullWeight(radius);
 
-            ByteBuffer copyBytes = BufferUtils.clone(bytes);
+            window.process(bytes, width, area, radius, (y, sums) -> {
+                int k = (y * width + area.x) * ImageHandler.BLOCK_SIZE;
+                for (int x = 0; x < area.width; x++, k += ImageHandler.BLOCK_SIZE) {
+                    int s = x * PyramidWindow.CHANNELS;
 
-            for (int yc = area.y; yc < area.y + area.height; yc++) {
-                for (int xc = area.x; xc < area.x + area.width; xc++) {
-
-                    int startY = yc - radius;
-                    int startX = xc - radius;
-                    int endY = yc + radius;
-                    int endX = xc + radius;
-
-                    int ar = 0, ag = 0, ab = 0;
-                    double sumWeight = 0;
-                    double distance;
-                    double dWeight;
-
-                    int r, g, b;
-
-                    for (int y = startY; y <= endY; y++) {
-                        for (int x = startX; x <= endX; x++) {
-
-                            if (x >= area.x && x < area.x + area.width
-                                   && y >= area.y && y < area.y + area.height) {
-
-                                int k = y * width * ImageHandler.BLOCK_SIZE + x * ImageHandler.BLOCK_SIZE;
-                                r = copyBytes.get(k) & 0xff;
-                                g = copyBytes.get(k + 1) & 0xff;
-                                b = copyBytes.get(k + 2) & 0xff;
-                            } else {
-                                r = 0;
-                                g = 0;
-                                b = 0;
-                            }
-
-                            distance = Math.max(Math.abs(x - xc), Math.abs(y - yc));
-                            dWeight = 1 - distance / (radius + 1);
-                            sumWeight += dWeight;
-
-                            ar += r * dWeight;
-                            ag += g * dWeight;
-                            ab += b * dWeight;
-                        }
-                    }
-
-                    int k = yc * width * ImageHandler.BLOCK_SIZE + xc * ImageHandler.BLOCK_SIZE;
-
-                    int blurredRed = (int) (ar / sumWeight);
-                    int blurredGreen = (int) (ag / sumWeight);
-                    int blurredBlue = (int) (ab / sumWeight);
+                    double blurredRed = blurred(sums, s, sumWeight, radius);
+                    double blurredGreen = blurred(sums, s + 1, sumWeight, radius);
+                    double blurredBlue = blurred(sums, s + 2, sumWeight, radius);
 
                     if (    blurredRed < normalThreshold
                             && blurredGreen < normalThreshold
@@ -94,10 +56,14 @@ public class DenoiseFilter implements ImageFilter {
                         bytes.put(k + 2, (byte) 0);
                     }
                 }
-            }
+            });
         }
     }
 
+    private static double blurred(long[] sums, int s, long sumWeight, int radius) {
+        return (double) sums[s] / sumWeight - PyramidWindow.loss(sums[s + PyramidWindow.LOSS], sumWeight, radius);
+    }
+
     public int getRadius() {
         return radius;
     }
@@ -0,0 +1,87 @@
+/*******************************************************************************
+* Copyright 2016 Ivan Shubin http://galenframework.com
+* 
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* 
+*   http://www.apache.org/licenses/LICENSE-2.0
+* 
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+******************************************************************************/
+package com.galenframework.rainbow4j.filters;
+
+import java.awt.*;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Applies a list of filters in the same order as they are given but with less passes over the image.
+ * Consecutive point filters (saturation, contrast, quantinize, mask) are fused into a single pass
+ * and window filters (blur, denoise) share the same buffers.
+ */
+public class FilterPipeline implements ImageFilter {
+    private final List<ImageFilter> stages = new ArrayList<>();
+    private final Dimension imageSize;
+
+    public FilterPipeline(List<ImageFilter> filters) {
+        this(filters, null);
+    }
+
+    /**
+     * @param imageSize size of the image from which the filtered buffer was copied.
+     *                  If null then the buffer is considered to be the whole image
+     */
+    public FilterPipeline(List<ImageFilter> filters, Dimension imageSize) {
+        this.imageSize = imageSize;
+        List<PointFilter> pointFilters = new ArrayList<>();
+
+        for (ImageFilter filter : filters) {
+            if (filter instanceof PointFilter) {
+                pointFilters.add((PointFilter) filter);
+            } else {
+                addPointStage(pointFilters);
+                pointFilters = new ArrayList<>();
+                stages.add(filter);
+            }
+        }
+        addPointStage(pointFilters);
+    }
+
+    private void addPointStage(List<PointFilter> pointFilters) {
+        if (pointFilters.size() == 1) {
+            stages.add(pointFilters.get(0));
+        } else if (pointFilters.size() > 1) {
+            stages.add(new FusedPointFilter(pointFilters));
+        }
+    }
+
+    @Override
+    public void apply(ByteBuffer bytes, int width, int height, Rectangle area) {
+        PyramidWindow window = null;
+        Dimension imageSize = this.imageSize != null ? this.imageSize : new Dimension(width, height);
+
+        for (ImageFilter stage : stages) {
+            if (stage instanceof WindowFilter) {
+                if (window == null) {
+                    window = new PyramidWindow();
+                }
+                ((WindowFilter) stage).apply(bytes, width, height, area, window, imageSize);
+            } else {
+                stage.apply(bytes, width, height, area);
+            }
+        }
+    }
+
+    /**
+     * @return amount of passes over the image which are made by this pipeline
+     */
+    public int getPasses() {
+        return stages.size();
+    }
+}
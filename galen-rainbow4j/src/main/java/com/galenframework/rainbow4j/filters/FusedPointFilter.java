@@ -0,0 +1,55 @@
+/*******************************************************************************
+* Copyright 2016 Ivan Shubin http://galenframework.com
+* 
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* 
+*   http://www.apache.org/licenses/LICENSE-2.0
+* 
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+******************************************************************************/
+package com.galenframework.rainbow4j.filters;
+
+import com.galenframework.rainbow4j.ImageHandler;
+
+import java.awt.*;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Applies a chain of point filters in a single pass, so every pixel is read and written only once
+ */
+class FusedPointFilter implements ImageFilter {
+    private final List<PointFilter> filters;
+
+    FusedPointFilter(List<PointFilter> filters) {
+        this.filters = filters;
+    }
+
+    @Override
+    public void apply(ByteBuffer bytes, int width, int height, Rectangle area) {
+        PointFilter.PixelTransform[] transforms = new PointFilter.PixelTransform[filters.size()];
+        for (int i = 0; i < transforms.length; i++) {
+            transforms[i] = filters.get(i).prepare(area);
+        }
+        apply(bytes, width, area, transforms);
+    }
+
+    static void apply(ByteBuffer bytes, int width, Rectangle area, PointFilter.PixelTransform... transforms) {
+        for (int y = 0; y < area.height; y++) {
+            int k = ((area.y + y) * width + area.x) * ImageHandler.BLOCK_SIZE;
+            for (int x = 0; x < area.width; x++, k += ImageHandler.BLOCK_SIZE) {
+                int rgba = bytes.getInt(k);
+                for (PointFilter.PixelTransform transform : transforms) {
+                    rgba = transform.transform(x, y, rgba);
+                }
+                bytes.putInt(k, rgba);
+            }
+        }
+    }
+}
@@ -20,7 +20,7 @@ import com.galenframework.rainbow4j.ImageHandler;
 import java.awt.Rectangle;
 import java.nio.ByteBuffer;
 
-public class MaskFilter implements ImageFilter {
+public class MaskFilter implements PointFilter {
     private final ImageHandler maskImage;
 
     public MaskFilter(ImageHandler maskImage) {
@@ -29,33 +29,29 @@ public class MaskFilter implements ImageFilter {
 
     @Override
     public void apply(ByteBuffer bytes, int width, int height, Rectangle area) {
-        int maskX, maskY, m, k, averageMaskPixel;
+        FusedPointFilter.apply(bytes, width, area, prepare(area));
+    }
 
+    @Override
+    public PixelTransform prepare(Rectangle area) {
         ByteBuffer maskBytes = maskImage.getBytes();
         int maskWidth = maskImage.getWidth();
         int maskHeight = maskImage.getHeight();
 
+        return (maskX, maskY, rgba) -> {
+            int averageMaskPixel;
+            if (maskX < maskWidth && maskY < maskHeight) {
+                int m = maskY * maskWidth * ImageHandler.BLOCK_SIZE + maskX * ImageHandler.BLOCK_SIZE;
 
-        for (int y = area.y; y < area.y + area.height; y++) {
-            for (int x = area.x; x < area.x + area.width; x++) {
-                k = y * width * ImageHandler.BLOCK_SIZE + x * ImageHandler.BLOCK_SIZE;
-
-                maskX = x - area.x;
-                maskY = y - area.y;
-
-                if (maskX < maskWidth && maskY < maskHeight) {
-                    m = maskY * maskWidth * ImageHandler.BLOCK_SIZE + maskX * ImageHandler.BLOCK_SIZE;
-
-                    averageMaskPixel = (((int) maskBytes.get(m)) +
-                            ((int) maskBytes.get(m + 1)) +
-                            ((int) maskBytes.get(m + 2))) / 3;
-                } else {
-                    averageMaskPixel = 255;
-                }
-
-                // Changing only alpha
-                bytes.put(k + 3, (byte) (Math.min(averageMaskPixel, 255) & 0xFF));
+                averageMaskPixel = (((int) maskBytes.get(m)) +
+                        ((int) maskBytes.get(m + 1)) +
+                        ((int) maskBytes.get(m + 2))) / 3;
+            } else {
+                averageMaskPixel = 255;
             }
-        }
+
+            // Changing only alpha
+            return (rgba & 0xffffff00) | (Math.min(averageMaskPixel, 255) & 0xFF);
+        };
     }
 }
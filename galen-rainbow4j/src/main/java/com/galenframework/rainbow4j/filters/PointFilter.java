@@ -0,0 +1,41 @@
+/*******************************************************************************
+* Copyright 2016 Ivan Shubin http://galenframework.com
+* 
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* 
+*   http://www.apache.org/licenses/LICENSE-2.0
+* 
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+******************************************************************************/
+package com.galenframework.rainbow4j.filters;
+
+import java.awt.*;
+
+/**
+ * Filter which changes every pixel based only on its own color and its position within the area.
+ * Consecutive point filters are applied by {@link FilterPipeline} in a single pass over the image.
+ */
+public interface PointFilter extends ImageFilter {
+
+    /**
+     * Prepares the filter for a pass over the given area
+     * @return transformation which is applied to each pixel of the area
+     */
+    PixelTransform prepare(Rectangle area);
+
+    interface PixelTransform {
+        /**
+         * @param x horizontal position of the pixel within the area
+         * @param y vertical position of the pixel within the area
+         * @param rgba color of the pixel packed in RGBA order as it is stored in {@link com.galenframework.rainbow4j.ImageHandler}
+         * @return new color of the pixel packed in RGBA order
+         */
+        int transform(int x, int y, int rgba);
+    }
+}
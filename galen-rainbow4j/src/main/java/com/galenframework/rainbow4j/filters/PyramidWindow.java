@@ -0,0 +1,275 @@
+/*******************************************************************************
+* Copyright 2016 Ivan Shubin http://galenframework.com
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*   http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+******************************************************************************/
+package com.galenframework.rainbow4j.filters;
+
+import com.galenframework.rainbow4j.ImageHandler;
+
+import java.awt.*;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Calculates weighted sums of colors in a square window around every pixel of the area.
+ * The weight of each pixel in the window is radius + 1 - distance, where distance is the chessboard
+ * distance to the center of the window, and pixels outside of the area are treated as black.
+ *
+ * Such a window is a sum of radius + 1 nested boxes, so with a summed-area table S and prefix sums
+ * of S along its diagonal (D) and anti-diagonal (A) every window sum takes only four lookups:
+ * <pre>
+ *     sum(x, y) = D(x + r, y + r) - D(x - r - 2, y - r - 2) - A(x - r - 1, y + r) + A(x + r + 1, y - r - 2)
+ * </pre>
+ * The rows are streamed from top to bottom and only the last 2 * radius + 3 rows of prefix sums are kept,
+ * so the cost per pixel does not depend on the radius. Each row of results is handed over
+ * once all the source rows it depends on were read, so the consumer is allowed to modify
+ * the source pixels of that row in place.
+ *
+ * The classic pyramid kernels accumulated weighted colors in ints, so every weighted color was truncated
+ * and their results were slightly darker. The loss of a color only depends on its remainder of division
+ * by radius + 1 and on the distance, so each color gets its loss averaged over the distances of the window
+ * and the plain box sums of these losses are handed over too. The filters subtract them from their results,
+ * so that they stay within 1 from the images produced by the classic kernels.
+ */
+class PyramidWindow {
+
+    /**
+     * Amount of sums per pixel: red, green, blue, the sum of weights of pixels within the area
+     * and the losses of red, green and blue
+     */
+    static final int CHANNELS = 7;
+
+    /**
+     * Index of the sum of weights among the sums of a pixel
+     */
+    static final int WEIGHT = 3;
+
+    /**
+     * Index of the loss of red among the sums of a pixel, it is followed by green and blue
+     */
+    static final int LOSS = 4;
+
+    /**
+     * Losses are kept as fixed point numbers
+     */
+    private static final double LOSS_SCALE = 1 << 16;
+
+    /**
+     * Amount of sums which are weighted by the pyramid: red, green, blue and weights
+     */
+    private static final int WEIGHTED = 4;
+
+    /**
+     * Amount of sums which are summed in a plain box: losses of red, green and blue
+     */
+    private static final int BOXED = 3;
+
+    interface RowConsumer {
+        /**
+         * @param y row of the image
+         * @param sums {@link #CHANNELS} sums for each pixel of the row within the area
+         */
+        void accept(int y, long[] sums);
+    }
+
+    private int lossRadius = -1;
+    private final long[] losses = new long[256];
+
+    private long[][] diagonal = new long[0][];
+    private long[][] antiDiagonal = new long[0][];
+    private long[][] summedLossRows = new long[0][];
+    private long[] summedRow = new long[0];
+    private long[] sums = new long[0];
+
+    /**
+     * Buffers of the window are kept between calls, so the same window could be reused
+     * for several filters without allocating them again
+     */
+    void process(ByteBuffer bytes, int width, Rectangle area, int radius, RowConsumer consumer) {
+        int aw = area.width;
+        int ah = area.height;
+        int r = radius;
+
+        // grid of prefix sums covers u in [-r-2, aw+r] and v in [-r-2, ah+r-1]
+        int gridWidth = aw + 2 * r + 3;
+        int ringSize = 2 * r + 3;
+        int summedRowSize = (aw + 1) * (WEIGHTED + BOXED);
+        ensureCapacity(ringSize, gridWidth * WEIGHTED, summedRowSize, aw * CHANNELS);
+        long[] losses = lossesFor(radius);
+
+        long[][] diagonal = this.diagonal;
+        long[][] antiDiagonal = this.antiDiagonal;
+        long[][] summedLossRows = this.summedLossRows;
+        // summed-area table row, index 0 corresponds to u = -1
+        long[] summedRow = this.summedRow;
+        long[] sums = this.sums;
+        long[] rowPrefix = new long[WEIGHTED + BOXED];
+
+        Arrays.fill(summedRow, 0, summedRowSize, 0);
+
+        for (int v = -r - 2; v < ah + r; v++) {
+            if (v >= 0 && v < ah) {
+                Arrays.fill(rowPrefix, 0);
+                int k = ((area.y + v) * width + area.x) * ImageHandler.BLOCK_SIZE;
+                for (int u = 0; u < aw; u++, k += ImageHandler.BLOCK_SIZE) {
+                    int red = bytes.get(k) & 0xff;
+                    int green = bytes.get(k + 1) & 0xff;
+                    int blue = bytes.get(k + 2) & 0xff;
+                    rowPrefix[0] += red;
+                    rowPrefix[1] += green;
+                    rowPrefix[2] += blue;
+                    rowPrefix[3] += 1;
+                    rowPrefix[4] += losses[red];
+                    rowPrefix[5] += losses[green];
+                    rowPrefix[6] += losses[blue];
+
+                    int s = (u + 1) * (WEIGHTED + BOXED);
+                    for (int c = 0; c < WEIGHTED + BOXED; c++) {
+                        summedRow[s + c] += rowPrefix[c];
+                    }
+                }
+            }
+
+            int gv = v + r + 2;
+            long[] diagonalRow = diagonal[gv % ringSize];
+            long[] antiDiagonalRow = antiDiagonal[gv % ringSize];
+            long[] prevDiagonalRow = gv > 0 ? diagonal[(gv - 1) % ringSize] : null;
+            long[] prevAntiDiagonalRow = gv > 0 ? antiDiagonal[(gv - 1) % ringSize] : null;
+
+            for (int gu = 0; gu < gridWidth; gu++) {
+                // summed-area table is clamped to the area, which treats pixels outside of it as black
+                int u = Math.min(Math.max(gu - r - 2, -1), aw - 1);
+                int s = (u + 1) * (WEIGHTED + BOXED);
+                int g = gu * WEIGHTED;
+
+                for (int c = 0; c < WEIGHTED; c++) {
+                    long summed = v >= 0 ? summedRow[s + c] : 0;
+
+                    long d = summed;
+                    if (prevDiagonalRow != null && gu > 0) {
+                        d += prevDiagonalRow[g - WEIGHTED + c];
+                    }
+                    diagonalRow[g + c] = d;
+
+                    long a = summed;
+                    if (prevAntiDiagonalRow != null) {
+                        // right of the area the summed-area table doesn't change along the row,
+                        // so the anti-diagonal beyond the grid is the same as in the last column of the grid
+                        a += prevAntiDiagonalRow[gu < gridWidth - 1 ? g + WEIGHTED + c : g + c];
+                    }
+                    antiDiagonalRow[g + c] = a;
+                }
+            }
+
+            long[] summedLossRow = summedLossRows[gv % ringSize];
+            for (int u = 0; u <= aw; u++) {
+                for (int c = 0; c < BOXED; c++) {
+                    summedLossRow[u * BOXED + c] = v >= 0 ? summedRow[u * (WEIGHTED + BOXED) + WEIGHTED + c] : 0;
+                }
+            }
+
+            int y = v - r;
+            if (y >= 0) {
+                // v is the row y + r, the oldest row in the ring is y - r - 2
+                long[] topDiagonalRow = diagonal[(gv + 1) % ringSize];
+                long[] topAntiDiagonalRow = antiDiagonal[(gv + 1) % ringSize];
+                long[] topSummedLossRow = summedLossRows[(gv + 2) % ringSize];
+                int k = ((area.y + y) * width + area.x) * ImageHandler.BLOCK_SIZE;
+
+                for (int x = 0; x < aw; x++, k += ImageHandler.BLOCK_SIZE) {
+                    int gx = x + r + 2;
+                    int br = (gx + r) * WEIGHTED;
+                    int tl = (gx - r - 2) * WEIGHTED;
+                    int bl = (gx - r - 1) * WEIGHTED;
+                    int tr = (gx + r + 1) * WEIGHTED;
+                    int s = x * CHANNELS;
+
+                    for (int c = 0; c < WEIGHTED; c++) {
+                        sums[s + c] = diagonalRow[br + c] - topDiagonalRow[tl + c]
+                                - antiDiagonalRow[bl + c] + topAntiDiagonalRow[tr + c];
+                    }
+
+                    // plain box of the window clamped to the area, the center is not counted as its weight is 1
+                    int right = (Math.min(x + r, aw - 1) + 1) * BOXED;
+                    int left = Math.max(x - r, 0) * BOXED;
+                    for (int c = 0; c < BOXED; c++) {
+                        sums[s + LOSS + c] = summedLossRow[right + c] - summedLossRow[left + c]
+                                - topSummedLossRow[right + c] + topSummedLossRow[left + c]
+                                - losses[bytes.get(k + c) & 0xff];
+                    }
+                }
+                consumer.accept(area.y + y, sums);
+            }
+        }
+    }
+
+    /**
+     * @return loss of a color value which the weighted sum of a pixel has
+     */
+    static double loss(long lossSum, long weightSum, int radius) {
+        return lossSum / LOSS_SCALE * (radius + 1) / weightSum;
+    }
+
+    /**
+     * @return sum of weights of all pixels in the window when it is fully inside of the area
+     */
+    static long fullWeight(int radius) {
+        long weight = 0;
+        for (int j = 0; j <= radius; j++) {
+            weight += (2 * j + 1) * (2 * j + 1);
+        }
+        return weight;
+    }
+
+    /**
+     * Average truncation losses of each color over all distances of a full window except the center
+     */
+    private long[] lossesFor(int radius) {
+        if (lossRadius != radius) {
+            int n = radius + 1;
+            long pixels = (2L * radius + 1) * (2L * radius + 1) - 1;
+            for (int color = 0; color < 256; color++) {
+                double loss = 0;
+                for (int d = 1; d <= radius; d++) {
+                    // color * (n - d) / n was truncated
+                    loss += 8.0 * d * (color * (n - d) % n) / n;
+                }
+                losses[color] = pixels > 0 ? Math.round(loss / pixels * LOSS_SCALE) : 0;
+            }
+            lossRadius = radius;
+        }
+        return losses;
+    }
+
+    private void ensureCapacity(int ringSize, int rowSize, int summedRowSize, int sumsSize) {
+        if (diagonal.length < ringSize || (diagonal.length > 0 && diagonal[0].length < rowSize)) {
+            int rows = Math.max(ringSize, diagonal.length);
+            int columns = Math.max(rowSize, diagonal.length > 0 ? diagonal[0].length : 0);
+            diagonal = new long[rows][columns];
+            antiDiagonal = new long[rows][columns];
+        }
+        if (summedRow.length < summedRowSize) {
+            summedRow = new long[summedRowSize];
+        }
+        int summedLossRowSize = summedRowSize / (WEIGHTED + BOXED) * BOXED;
+        if (summedLossRows.length < ringSize || (summedLossRows.length > 0 && summedLossRows[0].length < summedLossRowSize)) {
+            int rows = Math.max(ringSize, summedLossRows.length);
+            int columns = Math.max(summedLossRowSize, summedLossRows.length > 0 ? summedLossRows[0].length : 0);
+            summedLossRows = new long[rows][columns];
+        }
+        if (sums.length < sumsSize) {
+            sums = new long[sumsSize];
+        }
+    }
+}
@@ -15,12 +15,10 @@
 ******************************************************************************/
 package com.galenframework.rainbow4j.filters;
 
-import com.galenframework.rainbow4j.ImageHandler;
-
 import java.awt.*;
 import java.nio.ByteBuffer;
 
-public class QuantinizeFilter implements ImageFilter {
+public class QuantinizeFilter implements PointFilter {
     private int colorsAmount;
 
     public QuantinizeFilter(int colorsAmount) {
@@ -37,7 +35,11 @@ public class QuantinizeFilter implements ImageFilter {
 
     @Override
     public void apply(ByteBuffer bytes, int width, int height, Rectangle area) {
+        FusedPointFilter.apply(bytes, width, area, prepare(area));
+    }
 
+    @Override
+    public PixelTransform prepare(Rectangle area) {
         if (colorsAmount > 255) {
             colorsAmount = 255;
         }
@@ -45,21 +47,16 @@ public class QuantinizeFilter implements ImageFilter {
            colorsAmount = 2;
         }
 
-
         int d = 256 / colorsAmount;
 
-        for (int y = area.y; y < area.y + area.height; y++) {
-            for (int x = area.x; x < area.x + area.width; x++) {
-                int k = y * width * ImageHandler.BLOCK_SIZE + x * ImageHandler.BLOCK_SIZE;
-                double red = (bytes.get(k) & 0xff) / d;
-                double green = (bytes.get(k + 1) & 0xff) / d;
-                double blue = (bytes.get(k + 2) & 0xff) / d;
-
-
-                bytes.put(k, (byte) (Math.ceil(red) * d));
-                bytes.put(k + 1, (byte) (Math.ceil(green) * d));
-                bytes.put(k + 2, (byte) (Math.ceil(blue) * d));
-            }
+        int[] table = new int[256];
+        for (int color = 0; color < 256; color++) {
+            table[color] = (color / d) * d;
         }
+
+        return (x, y, rgba) -> (table[rgba >>> 24] << 24)
+                | (table[(rgba >> 16) & 0xff] << 16)
+                | (table[(rgba >> 8) & 0xff] << 8)
+                | (rgba & 0xff);
     }
 }
@@ -15,12 +15,10 @@
 ******************************************************************************/
 package com.galenframework.rainbow4j.filters;
 
-import com.galenframework.rainbow4j.ImageHandler;
-
 import java.awt.*;
 import java.nio.ByteBuffer;
 
-public class SaturationFilter implements ImageFilter {
+public class SaturationFilter implements PointFilter {
     private int level;
 
     public SaturationFilter(int level) {
@@ -38,7 +36,11 @@ public class SaturationFilter implements ImageFilter {
 
     @Override
     public void apply(ByteBuffer bytes, int width, int height, Rectangle area) {
+        FusedPointFilter.apply(bytes, width, area, prepare(area));
+    }
 
+    @Override
+    public PixelTransform prepare(Rectangle area) {
         if (level > 100) {
             level = 100;
         }
@@ -47,19 +49,17 @@ public class SaturationFilter implements ImageFilter {
         }
 
         double t = level / 100.0;
-        for (int y = area.y; y < area.y + area.height; y++) {
-            for (int x = area.x; x < area.x + area.width; x++) {
-                int k = y * width * ImageHandler.BLOCK_SIZE + x * ImageHandler.BLOCK_SIZE;
-                double red = bytes.get(k & 0xff);
-                double green = bytes.get(k + 1 & 0xff);
-                double blue = bytes.get(k + 2 & 0xff);
+        return (x, y, rgba) -> {
+            double red = rgba >>> 24;
+            double green = (rgba >> 16) & 0xff;
+            double blue = (rgba >> 8) & 0xff;
 
-                double gray = green * 0.59 + red * 0.3 + blue * 0.11;
-                bytes.put(k, (byte) colorRange(gray * (1.0 - t) + red * t));
-                bytes.put(k + 1, (byte) colorRange(gray * (1.0 - t) + green * t));
-                bytes.put(k + 2, (byte) colorRange(gray * (1.0 - t) + blue * t));
-            }
-        }
+            double gray = green * 0.59 + red * 0.3 + blue * 0.11;
+            return (colorRange(gray * (1.0 - t) + red * t) << 24)
+                    | (colorRange(gray * (1.0 - t) + green * t) << 16)
+                    | (colorRange(gray * (1.0 - t) + blue * t) << 8)
+                    | (rgba & 0xff);
+        };
     }
 
     private int colorRange(double color) {
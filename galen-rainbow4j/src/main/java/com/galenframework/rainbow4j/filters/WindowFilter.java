@@ -0,0 +1,37 @@
+/*******************************************************************************
+* Copyright 2016 Ivan Shubin http://galenframework.com
+* 
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* 
+*   http://www.apache.org/licenses/LICENSE-2.0
+* 
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+******************************************************************************/
+package com.galenframework.rainbow4j.filters;
+
+import java.awt.*;
+import java.nio.ByteBuffer;
+
+/**
+ * Filter which calculates each pixel from a window of pixels around it using {@link PyramidWindow}.
+ * The buffers of the window could be shared between several filters applied one after another.
+ */
+abstract class WindowFilter implements ImageFilter {
+
+    @Override
+    public void apply(ByteBuffer bytes, int width, int height, Rectangle area) {
+        apply(bytes, width, height, area, new PyramidWindow(), new Dimension(width, height));
+    }
+
+    /**
+     * @param imageSize size of the whole image. It differs from the buffer size
+     *                  when the buffer contains only a region copied out of the image
+     */
+    abstract void apply(ByteBuffer bytes, int width, int height, Rectangle area, PyramidWindow window, Dimension imageSize);
+}
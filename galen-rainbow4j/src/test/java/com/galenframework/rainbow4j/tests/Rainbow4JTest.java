@@ -16,6 +16,7 @@
 package com.galenframework.rainbow4j.tests;
 
 import java.awt.Color;
+import java.awt.Graphics2D;
 import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.io.File;
@@ -24,6 +25,9 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 
 import com.galenframework.rainbow4j.*;
 import com.galenframework.rainbow4j.colorscheme.*;
@@ -161,6 +165,98 @@ public class Rainbow4JTest {
         assertThat(spectrum.getOtherColors(), is(0));
         assertThat(spectrum.getTotalPixels(), is(10000));
     }
+
+    @DataProvider
+    public Object[][] spectrumClassifiersProvider() {
+        List<ColorClassifier> manyClassifiers = new LinkedList<>();
+        for (int i = 0; i < 40; i++) {
+            manyClassifiers.add(new SimpleColorClassifier("color-" + (i % 35), new Color(i * 6, 255 - i * 6, (i * 37) % 256)));
+        }
+        return new Object[][] {
+            {asList(
+                new GradientColorClassifier("skin", asList(new Color(230, 140, 120), new Color(120, 30, 60))),
+                new SimpleColorClassifier("pink", new Color(220, 130, 120)),
+                new SimpleColorClassifier("pink", new Color(200, 100, 100))
+            )},
+            {manyClassifiers}
+        };
+    }
+
+    @Test(dataProvider = "spectrumClassifiersProvider")
+    public void shouldRead_customSpectrum_sameAsCheckingEveryPixel(List<ColorClassifier> colorClassifiers) throws IOException {
+        BufferedImage image = Rainbow4J.loadImage(getClass().getResource("/lenna.png").getFile());
+        Rectangle area = new Rectangle(10, 20, image.getWidth() - 30, image.getHeight() - 20);
+        int maxColorSquareDistance = 15 * 15 * 3;
+
+        Map<String, Integer> expectedColors = new HashMap<>();
+        int expectedOtherColors = 0;
+        for (int y = area.y; y < area.y + area.height; y++) {
+            for (int x = area.x; x < area.x + area.width; x++) {
+                int rgb = image.getRGB(x, y);
+                boolean colorMatched = false;
+                for (ColorClassifier classifier : colorClassifiers) {
+                    expectedColors.putIfAbsent(classifier.getName(), 0);
+                    if (classifier.holdsColor((rgb >> 16) & 0xff, (rgb >> 8) & 0xff, rgb & 0xff, maxColorSquareDistance)) {
+                        expectedColors.put(classifier.getName(), expectedColors.get(classifier.getName()) + 1);
+                        colorMatched = true;
+                    }
+                }
+                if (!colorMatched) {
+                    expectedOtherColors++;
+                }
+            }
+        }
+
+        CustomSpectrum spectrum = Rainbow4J.readCustomSpectrum(image, colorClassifiers, area, 15);
+
+        assertThat(spectrum.getCollectedColors(), is(expectedColors));
+        assertThat(spectrum.getOtherColors(), is(expectedOtherColors));
+        assertThat(spectrum.getTotalPixels(), is(area.width * area.height));
+    }
+
+    @DataProvider
+    public Object[][] spectrumPrecisionProvider() {
+        return new Object[][] {{8}, {32}, {64}, {256}};
+    }
+
+    @Test(dataProvider = "spectrumPrecisionProvider")
+    public void shouldRead_spectrum_sameAsFullHistogram(int precision) throws IOException {
+        BufferedImage image = Rainbow4J.loadImage(getClass().getResource("/lenna.png").getFile());
+        Rectangle area = new Rectangle(5, 10, image.getWidth() - 20, image.getHeight() - 15);
+
+        int[][][] data = new int[precision][precision][precision];
+        for (int y = area.y; y < area.y + area.height; y++) {
+            for (int x = area.x; x < area.x + area.width; x++) {
+                int rgb = image.getRGB(x, y);
+                data[((rgb >> 16) & 0xff) * precision / 256][((rgb >> 8) & 0xff) * precision / 256][(rgb & 0xff) * precision / 256] += 1;
+            }
+        }
+
+        Spectrum spectrum = Rainbow4J.readSpectrum(image, area, precision);
+
+        int[][] queries = {{0, 0, 0, 0}, {255, 255, 255, 10}, {200, 100, 100, 0}, {220, 130, 120, 20}, {128, 64, 90, 60}, {100, 100, 100, 255}};
+        for (int[] query : queries) {
+            int crange = Math.min(query[3] * precision / 256, precision - 1);
+            int cr = query[0] * precision / 256, cg = query[1] * precision / 256, cb = query[2] * precision / 256;
+            long expected = 0;
+            for (int r = Math.max(0, cr - crange); r <= Math.min(cr + crange, precision - 1); r++) {
+                for (int g = Math.max(0, cg - crange); g <= Math.min(cg + crange, precision - 1); g++) {
+                    for (int b = Math.max(0, cb - crange); b <= Math.min(cb + crange, precision - 1); b++) {
+                        expected += data[r][g][b];
+                    }
+                }
+            }
+            assertThat(spectrum.getPercentage(query[0], query[1], query[2], query[3]), is(100.d * expected / (area.width * area.height)));
+        }
+
+        List<ColorDistribution> expectedColors = new Spectrum(data, area.width, area.height).getColorDistribution(1);
+        List<ColorDistribution> colors = spectrum.getColorDistribution(1);
+        assertThat(colors.size(), is(expectedColors.size()));
+        for (int i = 0; i < colors.size(); i++) {
+            assertThat(colors.get(i).getColor(), is(expectedColors.get(i).getColor()));
+            assertThat(colors.get(i).getPercentage(), is(expectedColors.get(i).getPercentage()));
+        }
+    }
     @Test
     public void shouldRead_imageSpectrum_fromPNG() throws IOException {
         BufferedImage image = Rainbow4J.loadImage(getClass().getResource("/test-spectrum-black-white-1.png").getFile());
@@ -364,6 +460,35 @@ public class Rainbow4JTest {
         handler.applyFilter(new DenoiseFilter(10), new Rectangle(0, 0, image.getWidth(), image.getHeight()));
     }
 
+    @Test(dataProvider = "goldenFilterProvider")
+    public void shouldApplyFilter_sameAsGoldenImage(String imagePath, ImageFilter filter, Rectangle area, String goldenImagePath) throws IOException {
+        BufferedImage image = Rainbow4J.loadImage(getClass().getResourceAsStream(imagePath));
+        ImageHandler handler = new ImageHandler(image);
+        if (area != null) {
+            handler.applyFilter(filter, area);
+        } else {
+            handler.applyFilter(filter);
+        }
+
+        ImageHandler golden = new ImageHandler(Rainbow4J.loadImage(getClass().getResourceAsStream(goldenImagePath)));
+        assertThat(handler.getWidth(), is(golden.getWidth()));
+        assertThat(handler.getHeight(), is(golden.getHeight()));
+
+        int differentPixels = 0;
+        for (int y = 0; y < golden.getHeight(); y++) {
+            for (int x = 0; x < golden.getWidth(); x++) {
+                Color expected = golden.pickColor(x, y);
+                Color actual = handler.pickColor(x, y);
+                if (Math.abs(expected.getRed() - actual.getRed()) > 1
+                        || Math.abs(expected.getGreen() - actual.getGreen()) > 1
+                        || Math.abs(expected.getBlue() - actual.getBlue()) > 1) {
+                    differentPixels++;
+                }
+            }
+        }
+        assertThat("Amount of pixels which differ from golden image by more than 1", differentPixels, is(0));
+    }
+
     @Test
     public void shouldApplyContrast_toImage() throws IOException {
         BufferedImage image = Rainbow4J.loadImage(getClass().getResourceAsStream("/lenna.jpg"));
@@ -380,6 +505,77 @@ public class Rainbow4JTest {
         handler.applyFilter(new SaturationFilter(0));
     }
 
+    @Test
+    public void shouldKeepColors_whenSaturationIsFull() throws IOException {
+        BufferedImage image = Rainbow4J.loadImage(getClass().getResourceAsStream("/lenna.png"));
+
+        ImageHandler handler = new ImageHandler(image);
+        handler.applyFilter(new SaturationFilter(100), new Rectangle(10, 20, 100, 50));
+
+        assertSamePixels(handler, image);
+    }
+
+    @Test
+    public void shouldApply_filterPipeline_sameAsSeparateFilters() throws IOException {
+        BufferedImage image = Rainbow4J.loadImage(getClass().getResourceAsStream("/lenna.png"));
+        ImageHandler mask = new ImageHandler(Rainbow4J.loadImage(getClass().getResourceAsStream("/color-scheme-image-1.png")));
+        List<ImageFilter> filters = asList(
+                new BlurFilter(2),
+                new SaturationFilter(30),
+                new ContrastFilter(40),
+                new QuantinizeFilter(5),
+                new MaskFilter(mask),
+                new DenoiseFilter(1),
+                new BlurFilter(1)
+        );
+        Rectangle area = new Rectangle(10, 20, 200, 150);
+
+        ImageHandler separateHandler = new ImageHandler(image);
+        for (ImageFilter filter : filters) {
+            separateHandler.applyFilter(filter, area);
+        }
+
+        FilterPipeline pipeline = new FilterPipeline(filters);
+        ImageHandler pipelineHandler = new ImageHandler(image);
+        pipelineHandler.applyFilter(pipeline, area);
+
+        assertThat(pipeline.getPasses(), is(4));
+        assertSamePixels(pipelineHandler, separateHandler.getImage());
+    }
+
+    @Test
+    public void shouldDenoise_smallArea_withRadiusLimitedByWholeImage() throws IOException {
+        // pixels outside of the area are counted as black, so how many gray pixels
+        // get below the threshold near the edges depends on the radius
+        BufferedImage image = new BufferedImage(100, 100, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(new Color(150, 150, 150));
+        graphics.fillRect(0, 0, 100, 100);
+        graphics.dispose();
+        Rectangle area = new Rectangle(20, 30, 40, 16);
+
+        ComparisonOptions options = new ComparisonOptions();
+        options.addFilterOriginal(new DenoiseFilter(10));
+        ImageCompareResult result = Rainbow4J.compare(image, image, area, area, options);
+
+        ImageHandler expected = new ImageHandler(image);
+        expected.applyFilter(new DenoiseFilter(10), area);
+
+        BufferedImage filtered = result.getOriginalFilteredImage();
+        assertSamePixels(new ImageHandler(filtered), expected.getImage().getSubimage(area.x, area.y, area.width, area.height));
+
+        int blackPixels = 0;
+        for (int y = 0; y < filtered.getHeight(); y++) {
+            for (int x = 0; x < filtered.getWidth(); x++) {
+                if ((filtered.getRGB(x, y) & 0xffffff) == 0) {
+                    blackPixels++;
+                }
+            }
+        }
+        // radius 8 would only give 248 black pixels
+        assertThat(blackPixels, is(336));
+    }
+
     @Test
     public void shouldApplyQuantinzation_toImage() throws IOException {
         BufferedImage image = Rainbow4J.loadImage(getClass().getResourceAsStream("/lenna.jpg"));
@@ -421,6 +617,201 @@ public class Rainbow4JTest {
         }
     }
 
+    /**
+     * Expected offsets and pixels are the ones found by comparing every offset of the spiral
+     */
+    @Test(dataProvider = "offsetSearchProvider")
+    public void shouldFind_sameOffset_asExhaustiveSpiralSearch(String imagePathA, String imagePathB, boolean stretch, int analyzeOffset, int tolerance,
+                                                               int expectedOffsetX, int expectedOffsetY, long expectedTotalPixels) throws IOException {
+        BufferedImage imageA = Rainbow4J.loadImage(getClass().getResourceAsStream(imagePathA));
+        BufferedImage imageB = Rainbow4J.loadImage(getClass().getResourceAsStream(imagePathB));
+
+        ComparisonOptions options = new ComparisonOptions();
+        options.setStretchToFit(stretch);
+        options.setAnalyzeOffset(analyzeOffset);
+        options.setTolerance(tolerance);
+        ImageCompareResult result = Rainbow4J.compare(imageA, imageB, options);
+
+        assertThat(result.getOffsetX(), is(expectedOffsetX));
+        assertThat(result.getOffsetY(), is(expectedOffsetY));
+        assertThat(result.getTotalPixels(), is(expectedTotalPixels));
+    }
+
+    @DataProvider
+    public Object[][] offsetSearchProvider() {
+        return new Object[][] {
+                {"/lenna.png", "/lenna-offset.png", false, 1, 0, -1, -1, 64460L},
+                {"/lenna.jpg", "/lenna-offset.jpg", false, 1, 0, 2, -1, 64653L},
+                {"/lenna.jpg", "/lenna-offset.jpg", false, 4, 10, -2, -4, 1994L},
+                {"/comp-image-1.jpg", "/comp-image-2.jpg", false, 3, 10, 0, 0, 1056L},
+                {"/comp-image-1.jpg", "/comp-image-3-scaled-down.jpg", true, 2, 10, 0, 1, 15024L},
+                {"/comp-image-1.jpg", "/comp-image-1-scaled-down.jpg", false, 2, 10, 3, -2, 162362L},
+                {"/page-screenshot-1.png", "/page-screenshot-1-sample-1.png", false, 2, 0, 3, -2, 425992L},
+                {"/page-screenshot-1.png", "/page-screenshot-1-sample-1.png", true, 3, 10, 4, -3, 389126L},
+                {"/noise/menu-item-1.png", "/noise/menu-item-1-expected.png", false, 2, 0, 3, -2, 5375L},
+                {"/color-scheme-image-1.png", "/color-scheme-image-2.png", true, 1, 0, 2, -1, 250571L}
+        };
+    }
+
+    @Test
+    public void shouldFind_offset_whenAnalyzingLargeOffset() throws IOException {
+        BufferedImage image = Rainbow4J.loadImage(getClass().getResourceAsStream("/lenna.png"));
+        BufferedImage imageOffset = Rainbow4J.loadImage(getClass().getResourceAsStream("/lenna-offset.png"));
+
+        ComparisonOptions options = new ComparisonOptions();
+        options.setAnalyzeOffset(10);
+        ImageCompareResult result = Rainbow4J.compare(image, imageOffset, options);
+
+        assertThat(result.getTotalPixels(), is(0L));
+        assertThat(result.getOffsetX(), is(-2));
+        assertThat(result.getOffsetY(), is(-4));
+        assertThat(result.getComparisonMap().getWidth(), is(image.getWidth()));
+    }
+
+    @Test
+    public void shouldNotBuild_comparisonMap_whenMismatchingPixelsAreWithinBudget() throws IOException {
+        BufferedImage imageA = Rainbow4J.loadImage(getClass().getResource("/comp-image-1.jpg").getFile());
+        BufferedImage imageB = Rainbow4J.loadImage(getClass().getResource("/comp-image-2.jpg").getFile());
+
+        ComparisonOptions options = new ComparisonOptions();
+        options.setMismatchBudget(1797L);
+        ImageCompareResult result = Rainbow4J.compare(imageA, imageB, options);
+
+        assertThat(result.getTotalPixels(), is(1797L));
+        assertThat(result.getComparisonMap(), is(nullValue()));
+        assertThat(result.getOriginalFilteredImage(), is(nullValue()));
+    }
+
+    @Test(dataProvider = "parallelismProvider")
+    public void shouldGive_sameMismatchingPixels_withAndWithoutBudget(int parallelism) throws IOException {
+        BufferedImage imageA = Rainbow4J.loadImage(getClass().getResourceAsStream("/page-screenshot-1.png"));
+        BufferedImage imageB = Rainbow4J.loadImage(getClass().getResourceAsStream("/page-screenshot-1-sample-1.png"));
+
+        ComparisonOptions options = new ComparisonOptions();
+        options.setParallelism(parallelism);
+        ImageCompareResult fullResult = Rainbow4J.compare(imageA, imageB, options);
+
+        options.setMismatchBudget(fullResult.getTotalPixels());
+        ImageCompareResult budgetResult = Rainbow4J.compare(imageA, imageB, options);
+
+        assertThat(budgetResult.getComparisonMap(), is(nullValue()));
+        assertThat(budgetResult.getTotalPixels(), is(fullResult.getTotalPixels()));
+        assertThat(budgetResult.getPercentage(), is(fullResult.getPercentage()));
+    }
+
+    @Test
+    public void shouldReuse_pooledBuffers_whenImagesAreNotReferencedByResult() throws IOException {
+        BufferedImage imageA = Rainbow4J.loadImage(getClass().getResource("/comp-image-1.jpg").getFile());
+        BufferedImage imageB = Rainbow4J.loadImage(getClass().getResource("/comp-image-2.jpg").getFile());
+
+        ComparisonOptions options = new ComparisonOptions();
+        options.setMismatchBudget(100000L);
+        options.addFilterBoth(new BlurFilter(1));
+
+        Rainbow4J.compare(imageA, imageB, options);
+        long hits = BufferPool.getDefault().getHits();
+        Rainbow4J.compare(imageA, imageB, options);
+
+        assertThat(BufferPool.getDefault().getHits(), is(greaterThanOrEqualTo(hits + 2)));
+    }
+
+    @Test
+    public void shouldReuse_pooledBuffers_andKeepFilteredImagesOfResult() throws IOException {
+        BufferedImage imageA = Rainbow4J.loadImage(getClass().getResource("/comp-image-1.jpg").getFile());
+        BufferedImage imageB = Rainbow4J.loadImage(getClass().getResource("/comp-image-2.jpg").getFile());
+
+        ComparisonOptions options = new ComparisonOptions();
+        options.addFilterBoth(new BlurFilter(1));
+
+        ImageCompareResult result = Rainbow4J.compare(imageA, imageB, options);
+        int[] filteredPixels = result.getOriginalFilteredImage().getRGB(0, 0, imageA.getWidth(), imageA.getHeight(), null, 0, imageA.getWidth());
+
+        long hits = BufferPool.getDefault().getHits();
+        Rainbow4J.compare(imageB, imageA, options);
+
+        assertThat(BufferPool.getDefault().getHits(), is(greaterThanOrEqualTo(hits + 2)));
+        assertThat(result.getOriginalFilteredImage().getRGB(0, 0, imageA.getWidth(), imageA.getHeight(), null, 0, imageA.getWidth()),
+                is(filteredPixels));
+    }
+
+    @Test
+    public void shouldKeep_bufferPool_withinItsLimit() {
+        BufferPool pool = new BufferPool(10000);
+
+        byte[] first = pool.borrowBytes(5000);
+        byte[] second = pool.borrowBytes(5200);
+        assertThat(first.length, is(5120));
+        assertThat(second.length, is(6144));
+        assertThat(pool.getMisses(), is(2L));
+
+        pool.returnBytes(first);
+        pool.returnBytes(second);
+        assertThat("Second buffer should not fit into the pool", pool.getRetainedBytes(), is(5120L));
+
+        assertThat(pool.borrowBytes(4900), is(sameInstance(first)));
+        assertThat(pool.getHits(), is(1L));
+        assertThat(pool.getRetainedBytes(), is(0L));
+    }
+
+    @Test
+    public void shouldGive_fullResult_whenMismatchBudgetIsExceeded() throws IOException {
+        BufferedImage imageA = Rainbow4J.loadImage(getClass().getResource("/comp-image-1.jpg").getFile());
+        BufferedImage imageB = Rainbow4J.loadImage(getClass().getResource("/comp-image-2.jpg").getFile());
+
+        ComparisonOptions options = new ComparisonOptions();
+        options.setMismatchBudget(1796L);
+        ImageCompareResult result = Rainbow4J.compare(imageA, imageB, options);
+
+        assertThat(result.getTotalPixels(), is(1797L));
+        assertThat(result.getComparisonMap(), is(notNullValue()));
+        assertThat(result.getOriginalFilteredImage(), is(notNullValue()));
+        assertThat(result.getSampleFilteredImage(), is(notNullValue()));
+    }
+
+    @DataProvider
+    public Object[][] parallelismProvider() {
+        return new Object[][]{{1}, {4}};
+    }
+
+    @Test(dataProvider = "parallelismProvider", expectedExceptions = CancellationException.class)
+    public void shouldStop_comparison_whenThreadIsInterrupted(int parallelism) throws IOException {
+        BufferedImage imageA = Rainbow4J.loadImage(getClass().getResourceAsStream("/page-screenshot-1.png"));
+        BufferedImage imageB = Rainbow4J.loadImage(getClass().getResourceAsStream("/page-screenshot-1-sample-1.png"));
+        ComparisonOptions options = new ComparisonOptions();
+        options.setParallelism(parallelism);
+
+        Thread.currentThread().interrupt();
+        try {
+            Rainbow4J.compare(imageA, imageB, options);
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+    @Test(dataProvider = "parallelismProvider", expectedExceptions = CancellationException.class)
+    public void shouldStop_comparison_whenItIsCancelled_evenInComparisonPool(int parallelism) throws Throwable {
+        BufferedImage imageA = Rainbow4J.loadImage(getClass().getResourceAsStream("/page-screenshot-1.png"));
+        BufferedImage imageB = Rainbow4J.loadImage(getClass().getResourceAsStream("/page-screenshot-1-sample-1.png"));
+        ComparisonOptions options = new ComparisonOptions();
+        options.setParallelism(parallelism);
+        options.cancel();
+
+        try {
+            ComparisonPool.get(2).submit(() -> Rainbow4J.compare(imageA, imageB, options)).get();
+        } catch (ExecutionException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    @Test
+    public void comparisonPool_shouldBeShared_andSizedByParallelism() {
+        ForkJoinPool pool = ComparisonPool.get(3);
+
+        assertThat(pool.getParallelism(), is(3));
+        assertThat(ComparisonPool.get(3) == pool, is(true));
+        assertThat(pool == ForkJoinPool.commonPool(), is(false));
+    }
+
     @Test
     public void shouldApply_maskFilter_andShouldGive_smallDifference() throws IOException {
         BufferedImage imageActual = Rainbow4J.loadImage(getClass().getResourceAsStream("/mask/actual.png"));
@@ -493,7 +884,7 @@ public class Rainbow4JTest {
         BufferedImage imageExpected = Rainbow4J.loadImage(getClass().getResourceAsStream("/noise/menu-item-1-expected-spots-2.png"));
 
         List<Integer> expectedPixels = asList(
-            653, 765, 860, 982, 1068, 1168, 1263, 1334, 1415
+            653, 766, 862, 981, 1071, 1165, 1264, 1335, 1416
         );
 
         // Assert first that there are a lot of mismatching pixels
@@ -537,6 +928,77 @@ public class Rainbow4JTest {
         assertThat(result.getTotalPixels(), is(0L));
     }
 
+    @Test
+    public void shouldExclude_overlappingRegions_whenComparingImageAreas() throws IOException {
+        BufferedImage imageA = Rainbow4J.loadImage(getClass().getResource("/comp-image-1.jpg").getFile());
+        BufferedImage imageB = Rainbow4J.loadImage(getClass().getResource("/comp-image-2.jpg").getFile());
+        Rectangle areaA = new Rectangle(50, 40, 300, 200);
+        Rectangle areaB = new Rectangle(60, 30, 300, 200);
+
+        List<Rectangle> regions = asList(
+                new Rectangle(40, 50, 100, 30),
+                new Rectangle(120, 60, 50, 100),
+                new Rectangle(130, 70, 10, 10),
+                new Rectangle(300, 200, 400, 400),
+                new Rectangle(-10, 220, 30, 5),
+                new Rectangle(200, 100, 0, 50)
+        );
+        ComparisonOptions options = new ComparisonOptions();
+        options.setIgnoreRegions(regions);
+
+        ImageCompareResult result = Rainbow4J.compare(imageA, imageB, areaA, areaB, options);
+
+        BufferedImage map = result.getComparisonMap();
+        int ignoredPixels = 0;
+        for (int y = 0; y < areaA.height; y++) {
+            for (int x = 0; x < areaA.width; x++) {
+                int xA = x + areaA.x;
+                int yA = y + areaA.y;
+                boolean expectedIgnored = regions.stream().anyMatch(r -> r.contains(xA, yA));
+                boolean ignored = (map.getRGB(x, y) >>> 24) == 0xa0;
+                if (ignored != expectedIgnored) {
+                    Assert.fail("Pixel at " + xA + ", " + yA + " should " + (expectedIgnored ? "" : "not ") + "be ignored");
+                }
+                if (ignored) {
+                    ignoredPixels++;
+                }
+            }
+        }
+        assertThat(ignoredPixels, is(greaterThan(0)));
+    }
+
+    @Test
+    public void shouldGive_sameResults_forFilteredArea_regardlessOfSurroundingImage() throws IOException {
+        BufferedImage imageA = Rainbow4J.loadImage(getClass().getResourceAsStream("/lenna.png"));
+        BufferedImage imageB = Rainbow4J.loadImage(getClass().getResourceAsStream("/lenna-offset.png"));
+
+        BufferedImage biggerImageA = new BufferedImage(imageA.getWidth() + 100, imageA.getHeight() + 70, BufferedImage.TYPE_INT_ARGB);
+        biggerImageA.getGraphics().drawImage(imageA, 60, 30, null);
+
+        ImageCompareResult result = Rainbow4J.compare(imageA, imageB,
+                new Rectangle(20, 30, 200, 150), new Rectangle(10, 5, 200, 150),
+                filteredAreaOptions(new Rectangle(50, 60, 40, 20)));
+        ImageCompareResult biggerImageResult = Rainbow4J.compare(biggerImageA, imageB,
+                new Rectangle(80, 60, 200, 150), new Rectangle(10, 5, 200, 150),
+                filteredAreaOptions(new Rectangle(110, 90, 40, 20)));
+
+        assertThat(biggerImageResult.getTotalPixels(), is(result.getTotalPixels()));
+        assertThat(biggerImageResult.getOffsetX(), is(result.getOffsetX()));
+        assertThat(biggerImageResult.getOffsetY(), is(result.getOffsetY()));
+        assertSamePixels(ImageHandler.wrap(biggerImageResult.getComparisonMap()), result.getComparisonMap());
+        assertSamePixels(ImageHandler.wrap(biggerImageResult.getOriginalFilteredImage()), result.getOriginalFilteredImage());
+    }
+
+    private ComparisonOptions filteredAreaOptions(Rectangle ignoreRegion) {
+        ComparisonOptions options = new ComparisonOptions();
+        options.setAnalyzeOffset(3);
+        options.setTolerance(20);
+        options.addFilterBoth(new BlurFilter(2));
+        options.addFilterBoth(new SaturationFilter(50));
+        options.setIgnoreRegions(asList(ignoreRegion));
+        return options;
+    }
+
     @Test
     public void shouldExclude_definedRegions_whenComparingImages() throws IOException {
         BufferedImage imageActual = Rainbow4J.loadImage(getClass().getResourceAsStream("/ignore-regions/ignore-regions-actual.png"));
@@ -557,16 +1019,173 @@ public class Rainbow4JTest {
     }
 
 
+    @Test
+    public void shouldPick_packedARGB_matchingColorObjects() throws IOException {
+        BufferedImage image = Rainbow4J.loadImage(getClass().getResourceAsStream("/lenna.png"));
+        ImageHandler handler = new ImageHandler(image);
+
+        for (int y = 0; y < image.getHeight(); y += 7) {
+            for (int x = 0; x < image.getWidth(); x += 7) {
+                Color color = handler.pickColor(x, y);
+                int argb = handler.pickARGB(x, y);
+                assertThat(argb, is(color.getRGB()));
+                assertThat((long) ImageHandler.colorDiff(argb, 0xff102030),
+                        is(ImageHandler.colorDiff(color, new Color(0x10, 0x20, 0x30))));
+            }
+        }
+
+        handler.setARGB(3, 5, 0x80ff1020);
+        assertThat(handler.pickColor(3, 5), is(new Color(0xff, 0x10, 0x20, 0x80)));
+        assertThat(handler.pickARGB(-1, 0), is(Color.black.getRGB()));
+    }
+
+    @Test(dataProvider = "imageTypeProvider")
+    public void shouldRead_pixels_fromDifferentImageTypes(int imageType) throws IOException {
+        BufferedImage original = Rainbow4J.loadImage(getClass().getResourceAsStream("/color-scheme-image-1.png"));
+        BufferedImage image = new BufferedImage(original.getWidth(), original.getHeight(), imageType);
+        image.getGraphics().drawImage(original, 0, 0, null);
+
+        assertSamePixels(new ImageHandler(image), image);
+        assertSamePixels(new ImageHandler(image.getSubimage(5, 7, 30, 20)), image.getSubimage(5, 7, 30, 20));
+    }
+
+    @Test
+    public void shouldWrap_handlerImage_withoutCopying() throws IOException {
+        BufferedImage image = new ImageHandler(Rainbow4J.loadImage(getClass().getResourceAsStream("/lenna.png"))).getImage();
+
+        ImageHandler handler = ImageHandler.wrap(image);
+        assertThat(handler.getImage(), is(sameInstance(image)));
+        handler.setARGB(3, 5, 0x80ff1020);
+        assertThat(image.getRGB(3, 5), is(0x80ff1020));
+
+        File file = File.createTempFile("test-rainbow4j-rgba-image", ".png");
+        Rainbow4J.saveImage(image, file);
+        assertSamePixels(handler, Rainbow4J.loadImage(file.getAbsolutePath()));
+
+        BufferedImage otherImage = new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB);
+        ImageHandler.wrap(otherImage).setARGB(1, 1, 0xffff0000);
+        assertThat(otherImage.getRGB(1, 1), is(0));
+    }
+
+    @Test
+    public void shouldRead_rowsOfRgbaImage_sameAsGetRGB() throws IOException {
+        BufferedImage original = Rainbow4J.loadImage(getClass().getResourceAsStream("/color-scheme-image-1.png"));
+        BufferedImage rgbaImage = ImageHandler.copyToRgbaImage(original);
+
+        int[] row = new int[30];
+        int[] expectedRow = new int[30];
+        for (int y = 7; y < 27; y++) {
+            ImageHandler.readARGBRow(rgbaImage, 5, y, 30, row);
+            original.getRGB(5, y, 30, 1, expectedRow, 0, 30);
+            assertThat(row, is(expectedRow));
+        }
+    }
+
+    @Test
+    public void shouldSave_areaOfImage_asPng() throws IOException {
+        BufferedImage original = Rainbow4J.loadImage(getClass().getResourceAsStream("/color-scheme-image-1.png"));
+        File file = File.createTempFile("test-rainbow4j-png-area", ".png");
+
+        for (BufferedImage image : asList(original, ImageHandler.copyToRgbaImage(original))) {
+            Rainbow4J.saveImage(image, new Rectangle(5, 7, 30, 20), file, 1);
+            assertSamePixels(new ImageHandler(Rainbow4J.loadImage(file.getAbsolutePath())), original.getSubimage(5, 7, 30, 20));
+        }
+    }
+
+    private void assertSamePixels(ImageHandler handler, BufferedImage image) {
+        assertThat(handler.getWidth(), is(image.getWidth()));
+        assertThat(handler.getHeight(), is(image.getHeight()));
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                if (handler.pickARGB(x, y) != image.getRGB(x, y)) {
+                    Assert.fail("Pixel at " + x + ", " + y + " should be " + Integer.toHexString(image.getRGB(x, y))
+                            + " but was " + Integer.toHexString(handler.pickARGB(x, y)));
+                }
+            }
+        }
+    }
+
+
+    @Test(dataProvider = "parallelComparisonProvider")
+    public void shouldGive_sameResults_forSerialAndParallelComparison(String imagePathA, String imagePathB, boolean stretch, int analyzeOffset) throws IOException {
+        BufferedImage imageA = Rainbow4J.loadImage(getClass().getResourceAsStream(imagePathA));
+        BufferedImage imageB = Rainbow4J.loadImage(getClass().getResourceAsStream(imagePathB));
+
+        ImageCompareResult serialResult = Rainbow4J.compare(imageA, imageB, comparisonOptions(stretch, analyzeOffset, 1));
+        ImageCompareResult parallelResult = Rainbow4J.compare(imageA, imageB, comparisonOptions(stretch, analyzeOffset, 4));
+
+        assertThat(parallelResult.getTotalPixels(), is(serialResult.getTotalPixels()));
+        assertThat(parallelResult.getPercentage(), is(serialResult.getPercentage()));
+        assertThat(parallelResult.getOffsetX(), is(serialResult.getOffsetX()));
+        assertThat(parallelResult.getOffsetY(), is(serialResult.getOffsetY()));
+
+        BufferedImage serialMap = serialResult.getComparisonMap();
+        BufferedImage parallelMap = parallelResult.getComparisonMap();
+        for (int y = 0; y < serialMap.getHeight(); y++) {
+            for (int x = 0; x < serialMap.getWidth(); x++) {
+                assertThat(parallelMap.getRGB(x, y), is(serialMap.getRGB(x, y)));
+            }
+        }
+    }
+
+    private ComparisonOptions comparisonOptions(boolean stretch, int analyzeOffset, int parallelism) {
+        ComparisonOptions options = new ComparisonOptions();
+        options.setTolerance(10);
+        options.setStretchToFit(stretch);
+        options.setAnalyzeOffset(analyzeOffset);
+        options.setParallelism(parallelism);
+        return options;
+    }
+
+    @DataProvider
+    public Object[][] parallelComparisonProvider() {
+        return new Object[][] {
+                {"/comp-image-1.jpg", "/comp-image-2.jpg", false, 0},
+                {"/comp-image-1.jpg", "/comp-image-3-scaled-down.jpg", true, 0},
+                {"/lenna.png", "/lenna-offset.png", false, 4}
+        };
+    }
+
     @DataProvider
     public Object[][] imageCompareProvider() {
         return new Object[][] {
                 //pixelsmooth,  approx percentage, total pixels
+                // comparison has no tolerance here, so blurred pixels which differ by 1 are counted too
                 {0, 0.72, 1797},
                 {1, 0.85, 2138},
-                {2, 0.87, 2176},
-                {3, 0.92, 2305}
+                {2, 1.07, 2686},
+                {3, 0.92, 2321}
         };
     }
 
+    @DataProvider
+    public Object[][] goldenFilterProvider() {
+        // golden images were produced by the classic pyramid kernels of blur and denoise
+        return new Object[][] {
+            {"/lenna.png", new BlurFilter(1), null, "/golden/lenna-blur-1.png"},
+            {"/lenna.png", new BlurFilter(2), null, "/golden/lenna-blur-2.png"},
+            {"/lenna.png", new BlurFilter(4), null, "/golden/lenna-blur-4.png"},
+            {"/lenna.png", new BlurFilter(5), null, "/golden/lenna-blur-5.png"},
+            {"/lenna.png", new BlurFilter(10), null, "/golden/lenna-blur-10.png"},
+            {"/lenna.png", new BlurFilter(3), new Rectangle(30, 40, 120, 90), "/golden/lenna-blur-3-area.png"},
+            {"/lenna.png", new BlurFilter(9), new Rectangle(20, 30, 150, 100), "/golden/lenna-blur-9-area.png"},
+            {"/noise/menu-item-1.png", new DenoiseFilter(1), null, "/golden/menu-item-denoise-1.png"},
+            {"/noise/menu-item-1.png", new DenoiseFilter(3), null, "/golden/menu-item-denoise-3.png"},
+            {"/noise/menu-item-1.png", new DenoiseFilter(4), null, "/golden/menu-item-denoise-4.png"},
+            {"/noise/menu-item-1.png", new DenoiseFilter(5), null, "/golden/menu-item-denoise-5.png"},
+            {"/noise/menu-item-1.png", new DenoiseFilter(10), null, "/golden/menu-item-denoise-10.png"},
+            {"/noise/menu-item-1.png", new DenoiseFilter(2), new Rectangle(10, 5, 60, 20), "/golden/menu-item-denoise-2-area.png"}
+        };
+    }
 
+    @DataProvider
+    public Object[][] imageTypeProvider() {
+        return new Object[][] {
+            {BufferedImage.TYPE_INT_ARGB},
+            {BufferedImage.TYPE_INT_RGB},
+            {BufferedImage.TYPE_4BYTE_ABGR},
+            {BufferedImage.TYPE_3BYTE_BGR},
+            {BufferedImage.TYPE_USHORT_565_RGB}
+        };
+    }
 }